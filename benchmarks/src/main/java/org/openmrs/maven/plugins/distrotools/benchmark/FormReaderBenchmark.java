@@ -0,0 +1,91 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.benchmark;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.maven.plugins.distrotools.util.FormReader;
+import org.openmrs.maven.plugins.distrotools.util.XmlUtils;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilder;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link FormReader}, compared with reading each form into a new string. Run with -prof gc to compare
+ * allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FormReaderBenchmark {
+
+	@Param({ "10", "1000", "100000" })
+	public int size;
+
+	private File file;
+
+	private FormReader formReader;
+
+	private DocumentBuilder documentBuilder;
+
+	@Setup
+	public void setup() throws Exception {
+		file = File.createTempFile("form", ".html");
+		FileUtils.writeStringToFile(file, SyntheticCorpus.formXml(size), "UTF-8");
+		formReader = new FormReader();
+		documentBuilder = XmlUtils.createBuilder(null);
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public Document readToString() throws Exception {
+		Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+		try {
+			return XmlUtils.stringToDocument(XmlUtils.stripComments(IOUtils.toString(reader)), documentBuilder);
+		}
+		finally {
+			IOUtils.closeQuietly(reader);
+		}
+	}
+
+	@Benchmark
+	public Document readToBuffers() throws Exception {
+		return XmlUtils.stringToDocument(formReader.readWithoutComments(file), documentBuilder);
+	}
+}
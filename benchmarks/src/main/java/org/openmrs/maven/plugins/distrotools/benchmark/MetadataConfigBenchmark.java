@@ -0,0 +1,77 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.maven.plugins.distrotools.MetadataConfig;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link MetadataConfig}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetadataConfigBenchmark {
+
+	@Param({ "10", "1000", "100000" })
+	public int size;
+
+	private String[] keys;
+
+	private String[] uuids;
+
+	private MetadataConfig config;
+
+	@Setup
+	public void setup() {
+		keys = new String[size];
+		uuids = new String[size];
+		for (int r = 0; r < size; r++) {
+			keys[r] = "CONCEPT_" + r;
+			uuids[r] = SyntheticCorpus.uuid(r);
+		}
+		config = addReferences();
+	}
+
+	@Benchmark
+	public MetadataConfig addReferences() {
+		MetadataConfig config = new MetadataConfig();
+		for (int r = 0; r < size; r++) {
+			config.addReference(r % 2 == 0 ? "Concept" : "Program", keys[r], uuids[r]);
+		}
+		return config;
+	}
+
+	@Benchmark
+	public Properties toProperties() {
+		return config.toProperties("metadata.");
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.benchmark;
+
+import java.util.UUID;
+
+/**
+ * Generates synthetic reference files, forms and constants files of a given size
+ */
+public class SyntheticCorpus {
+
+	/**
+	 * Generates a metadata reference file
+	 * @param size the number of references
+	 * @return the reference XML
+	 */
+	public static String refsXml(int size) {
+		StringBuilder sb = new StringBuilder("<refs type=\"Concept\">\n");
+		for (int r = 0; r < size; r++) {
+			sb.append("\t<ref key=\"CONCEPT_").append(r).append("\" uuid=\"").append(uuid(r)).append("\" />\n");
+		}
+		return sb.append("</refs>\n").toString();
+	}
+
+	/**
+	 * Generates a form with macros and comments
+	 * @param size the number of obs fields, and also of macros
+	 * @return the form XML
+	 */
+	public static String formXml(int size) {
+		StringBuilder sb = new StringBuilder("<htmlform>\n\t<macros>\n");
+		for (int m = 0; m < size; m++) {
+			sb.append("\t\tconcept").append(m).append("=").append(uuid(m)).append("\n");
+		}
+		sb.append("\t</macros>\n");
+		for (int o = 0; o < size; o++) {
+			sb.append("\t<!-- Field ").append(o).append(" -->\n");
+			sb.append("\t<p>Question ").append(o).append(" <obs conceptId=\"$concept").append(o).append("\" answerConceptIds=\"$concept")
+					.append((o + 1) % size).append(",$concept").append((o + 2) % size).append("\" /></p>\n");
+		}
+		return sb.append("</htmlform>\n").toString();
+	}
+
+	/**
+	 * Generates a constants file with one top-level class containing scalar constants, list constants and subclasses
+	 * @param size the number of scalar constants
+	 * @return the constants JSON
+	 */
+	public static String constantsJson(int size) {
+		StringBuilder sb = new StringBuilder("{\n\t\"Constants\": {\n");
+		for (int c = 0; c < size; c++) {
+			sb.append("\t\t\"CONSTANT_").append(c).append("\": \"").append(uuid(c)).append("\",\n");
+		}
+		for (int l = 0; l < size / 10; l++) {
+			sb.append("\t\t\"LIST_").append(l).append("\": [\"CONSTANT_").append(l).append("\", \"CONSTANT_").append(l + 1).append("\"],\n");
+		}
+		sb.append("\t\t\"Sub\": {\n");
+		for (int s = 0; s < size / 10; s++) {
+			sb.append("\t\t\t\"SUB_").append(s).append("\": \"").append(s).append("\",\n");
+		}
+		sb.append("\t\t\t\"LAST\": \"last\"\n\t\t}\n\t}\n}\n");
+		return sb.toString();
+	}
+
+	/**
+	 * Gets a deterministic UUID for the given number
+	 * @param number the number
+	 * @return the UUID
+	 */
+	public static String uuid(int number) {
+		return UUID.nameUUIDFromBytes(String.valueOf(number).getBytes()).toString();
+	}
+}
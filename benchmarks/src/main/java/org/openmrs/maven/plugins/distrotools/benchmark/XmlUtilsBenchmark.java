@@ -0,0 +1,79 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.maven.plugins.distrotools.util.XmlUtils;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.transform.Transformer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link XmlUtils}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XmlUtilsBenchmark {
+
+	@Param({ "10", "1000", "100000" })
+	public int size;
+
+	private String xml;
+
+	private Document document;
+
+	private DocumentBuilder documentBuilder;
+
+	private Transformer documentTransformer;
+
+	@Setup
+	public void setup() throws Exception {
+		xml = SyntheticCorpus.refsXml(size);
+		documentBuilder = XmlUtils.createBuilder(null);
+		documentTransformer = XmlUtils.createTransformer();
+		document = XmlUtils.stringToDocument(xml, documentBuilder);
+	}
+
+	@Benchmark
+	public DocumentBuilder createBuilder() throws Exception {
+		return XmlUtils.createBuilder("metadata-refs.xsd");
+	}
+
+	@Benchmark
+	public Document stringToDocument() throws Exception {
+		return XmlUtils.stringToDocument(xml, documentBuilder);
+	}
+
+	@Benchmark
+	public String documentToString() throws Exception {
+		return XmlUtils.documentToString(document, documentTransformer);
+	}
+}
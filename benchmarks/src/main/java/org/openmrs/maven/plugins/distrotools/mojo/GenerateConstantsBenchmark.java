@@ -0,0 +1,85 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.mojo;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.maven.plugins.distrotools.benchmark.SyntheticCorpus;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the constant class methods of {@link GenerateConstantsMojo}. In the mojo package so it can call
+ * protected methods.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GenerateConstantsBenchmark {
+
+	@Param({ "10", "1000", "100000" })
+	public int size;
+
+	private byte[] json;
+
+	private JsonFactory jsonFactory;
+
+	private GenerateConstantsMojo mojo;
+
+	private GenerateConstantsMojo.ConstantClass constantClass;
+
+	@Setup
+	public void setup() throws Exception {
+		json = SyntheticCorpus.constantsJson(size).getBytes("UTF-8");
+		jsonFactory = new JsonFactory();
+		mojo = new GenerateConstantsMojo();
+		constantClass = createConstantClass();
+	}
+
+	@Benchmark
+	public GenerateConstantsMojo.ConstantClass createConstantClass() throws Exception {
+		JsonParser parser = jsonFactory.createJsonParser(json);
+		try {
+			parser.nextToken(); // root object
+			parser.nextToken(); // class name
+			parser.nextToken(); // class object
+			return GenerateConstantsMojo.createConstantClass(parser.getCurrentName(), parser);
+		}
+		finally {
+			parser.close();
+		}
+	}
+
+	@Benchmark
+	public StringBuilder generateAndAppendClassBody() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		mojo.generateAndAppendClassBody(sb, constantClass, 0);
+		return sb;
+	}
+}
@@ -0,0 +1,108 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.mojo;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.maven.plugins.distrotools.MetadataConfig;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long javac takes to compile the generated Metadata source with and without sharding. A maximum of 0
+ * references per class means no sharding. In the mojo package so it can call protected methods.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MetadataShardingBenchmark {
+
+	@Param({ "50000" })
+	public int references;
+
+	@Param({ "0", "5000" })
+	public int maxReferencesPerClass;
+
+	private File directory;
+
+	private List<File> sources;
+
+	private JavaCompiler compiler;
+
+	@Setup
+	public void setup() throws Exception {
+		MetadataConfig config = new MetadataConfig();
+		for (int r = 0; r < references; r++) {
+			config.addReference("Concept", "CONCEPT_" + r, UUID.randomUUID().toString());
+		}
+
+		directory = File.createTempFile("distrotools", "benchmark");
+		directory.delete();
+		directory.mkdirs();
+		new GenerateMetadataSourcesMojo().generateMetadataSource(config, directory, "org.openmrs.benchmark", maxReferencesPerClass);
+
+		sources = Arrays.asList(new File(directory, "org/openmrs/benchmark").listFiles());
+		compiler = ToolProvider.getSystemJavaCompiler();
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	@Benchmark
+	public boolean compile() throws Exception {
+		StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+		try {
+			Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromFiles(sources);
+			List<String> options = new ArrayList<String>();
+			options.add("-proc:none");
+			options.add("-d");
+			options.add(directory.getPath());
+
+			boolean success = compiler.getTask(null, fileManager, null, options, null, units).call();
+			if (!success) {
+				throw new IllegalStateException("Unable to compile the generated metadata sources");
+			}
+			return success;
+		}
+		finally {
+			fileManager.close();
+		}
+	}
+}
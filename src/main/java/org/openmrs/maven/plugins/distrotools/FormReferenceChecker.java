@@ -0,0 +1,283 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools;
+
+import org.apache.commons.io.IOUtils;
+import org.openmrs.maven.plugins.distrotools.util.MacroEngine;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Streaming checker of the metadata references in HFE form files. These attributes are checked:
+ * <ul>
+ *   <li>conceptId, conceptIds, answerConceptId, answerConceptIds and groupingConceptId on any element, which must
+ *   reference a Concept</li>
+ *   <li>default and types on the encounterType element, which must reference an EncounterType</li>
+ * </ul>
+ * Each comma separated value is checked against a metadata configuration, either as a UUID, which is looked up in the
+ * configuration's UUID indexes, or as a ${metadata.type.key} filter property. References to metadata of another type
+ * than the attribute expects are reported too. Values can be macros, which are resolved using the form's &lt;macros&gt;
+ * element. Other values, such as concept ids and mappings, aren't checked. Each checker has its own XML input factory
+ * so should only be used by one thread, but checkers can share a configuration.
+ */
+public class FormReferenceChecker {
+
+	/**
+	 * Attributes which hold references on any element
+	 */
+	protected static final Set<String> REFERENCE_ATTRIBUTES = new HashSet<String>(Arrays.asList(
+			"conceptId", "conceptIds", "answerConceptId", "answerConceptIds", "groupingConceptId"
+	));
+
+	/**
+	 * Attributes which hold references on the encounterType element
+	 */
+	protected static final Set<String> ENCOUNTER_TYPE_ATTRIBUTES = new HashSet<String>(Arrays.asList("default", "types"));
+
+	/**
+	 * Type of the metadata referenced by {@link #REFERENCE_ATTRIBUTES}
+	 */
+	protected static final String CONCEPT_TYPE = "Concept";
+
+	/**
+	 * Type of the metadata referenced by {@link #ENCOUNTER_TYPE_ATTRIBUTES}
+	 */
+	protected static final String ENCOUNTER_TYPE_TYPE = "EncounterType";
+
+	private static final String FILTER_PREFIX = "${metadata.";
+
+	private final XMLInputFactory inputFactory;
+
+	private final MetadataConfig config;
+
+	// Types by their lower case names, as used in filter property names
+	private final Map<String, String> typesByFilterType = new HashMap<String, String>();
+
+	/**
+	 * Creates a new checker
+	 * @param config the metadata configuration
+	 */
+	public FormReferenceChecker(MetadataConfig config) {
+		this.config = config;
+
+		for (String type : config.getConfiguredTypes()) {
+			typesByFilterType.put(type.toLowerCase(), type);
+		}
+
+		inputFactory = XMLInputFactory.newInstance();
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
+	/**
+	 * Checks the given form file
+	 * @param file the form file
+	 * @return descriptions of the unknown references, in document order
+	 */
+	public List<String> check(File file) throws IOException, XMLStreamException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			return check(in, file.getPath());
+		}
+		finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Checks form XML from the given stream. The stream is not closed.
+	 * @param in the input stream
+	 * @param systemId the system id used in error messages (may be null)
+	 * @return descriptions of the unknown references, in document order
+	 */
+	public List<String> check(InputStream in, String systemId) throws IOException, XMLStreamException {
+		return check(inputFactory.createXMLStreamReader(systemId, in));
+	}
+
+	/**
+	 * Checks form XML from the given reader, e.g. of content which has already been read. The reader is not closed.
+	 * @param in the reader
+	 * @param systemId the system id used in error messages (may be null)
+	 * @return descriptions of the unknown references, in document order
+	 */
+	public List<String> check(Reader in, String systemId) throws IOException, XMLStreamException {
+		return check(inputFactory.createXMLStreamReader(systemId, in));
+	}
+
+	/**
+	 * Checks form XML from the given stream reader, which is closed afterwards
+	 * @param reader the stream reader
+	 * @return descriptions of the unknown references, in document order
+	 */
+	protected List<String> check(XMLStreamReader reader) throws IOException, XMLStreamException {
+		List<AttributeValue> values = new ArrayList<AttributeValue>();
+		Properties macros = new Properties();
+
+		// Macros may be defined after they're used, so values are collected first and checked at the end
+		try {
+			while (reader.hasNext()) {
+				// The reader reports where each event ends, so an element starts where the previous event ended
+				Location start = reader.getLocation();
+				int line = start.getLineNumber(), column = start.getColumnNumber();
+				if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+					continue;
+				}
+
+				String element = reader.getLocalName();
+				if ("macros".equals(element)) {
+					macros.load(new StringReader(reader.getElementText()));
+					continue;
+				}
+
+				for (int a = 0; a < reader.getAttributeCount(); a++) {
+					String attribute = reader.getAttributeLocalName(a);
+					if ("encounterType".equals(element) && ENCOUNTER_TYPE_ATTRIBUTES.contains(attribute)) {
+						values.add(new AttributeValue(attribute, reader.getAttributeValue(a), ENCOUNTER_TYPE_TYPE, line, column));
+					}
+					else if (REFERENCE_ATTRIBUTES.contains(attribute)) {
+						values.add(new AttributeValue(attribute, reader.getAttributeValue(a), CONCEPT_TYPE, line, column));
+					}
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+
+		MacroEngine macroEngine = new MacroEngine(macros);
+		List<String> problems = new ArrayList<String>();
+		for (AttributeValue value : values) {
+			for (String token : value.value.split(",")) {
+				token = token.trim();
+				String expanded = macroEngine.expand(token, null);
+				if (expanded.equals(token)) {
+					checkValue(token, "", value, problems);
+				}
+				else {
+					for (String resolved : expanded.split(",")) {
+						checkValue(resolved.trim(), " (from " + token + ")", value, problems);
+					}
+				}
+			}
+		}
+		return problems;
+	}
+
+	/**
+	 * Checks a single value, adding a description to the problems if it's an unknown reference or a reference to
+	 * metadata of another type than the attribute expects
+	 */
+	private void checkValue(String value, String source, AttributeValue attribute, List<String> problems) {
+		MetadataConfig.Reference reference;
+		if (value.startsWith(FILTER_PREFIX) && value.endsWith("}")) {
+			reference = findFilterProperty(value.substring(FILTER_PREFIX.length(), value.length() - 1));
+		}
+		else if (isUuidLike(value)) {
+			reference = config.findReference(attribute.type, value);
+			if (reference == null) {
+				reference = config.findReference(value);
+			}
+		}
+		else {
+			return;
+		}
+
+		String location = " in attribute " + attribute.name + " at line " + attribute.line + ", column " + attribute.column;
+		if (reference == null) {
+			problems.add("Unknown reference " + value + source + location);
+		}
+		else if (!reference.getType().equals(attribute.type)) {
+			problems.add("Reference " + value + source + " is " + reference + " rather than a " + attribute.type + location);
+		}
+	}
+
+	/**
+	 * Finds the reference which a filter property name (without the metadata prefix) matches
+	 * @param name the name, e.g. concept.YES
+	 * @return the reference or null if there is no matching reference
+	 */
+	private MetadataConfig.Reference findFilterProperty(String name) {
+		int dot = name.indexOf('.');
+		if (dot < 0) {
+			return null;
+		}
+		String type = typesByFilterType.get(name.substring(0, dot));
+		String key = name.substring(dot + 1);
+		String uuid = type != null ? config.getReferencesByType(type).get(key) : null;
+		return uuid != null ? new MetadataConfig.Reference(type, key, uuid) : null;
+	}
+
+	/**
+	 * Checks whether a value looks like a UUID rather than an id or a mapping. CIEL style UUIDs don't have dashes, so
+	 * this just checks for 36 letters, digits or dashes.
+	 * @param value the value
+	 * @return true if the value looks like a UUID
+	 */
+	protected static boolean isUuidLike(String value) {
+		if (value.length() != 36) {
+			return false;
+		}
+		for (int c = 0; c < value.length(); c++) {
+			char ch = value.charAt(c);
+			if (!Character.isLetterOrDigit(ch) && ch != '-') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * An attribute value, the type of metadata it references and the location of its element
+	 */
+	private static class AttributeValue {
+
+		private final String name;
+
+		private final String value;
+
+		private final String type;
+
+		private final int line;
+
+		private final int column;
+
+		private AttributeValue(String name, String value, String type, int line, int column) {
+			this.name = name;
+			this.value = value;
+			this.type = type;
+			this.line = line;
+			this.column = column;
+		}
+	}
+}
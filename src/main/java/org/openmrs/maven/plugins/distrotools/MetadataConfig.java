@@ -14,18 +14,24 @@
 
 package org.openmrs.maven.plugins.distrotools;
 
+import org.openmrs.maven.plugins.distrotools.util.ReferenceMap;
+import org.openmrs.maven.plugins.distrotools.util.StringTable;
+
 import java.util.Collection;
-import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TreeMap;
 
 /**
- * Describes a distribution's metadata configuration
+ * Describes a distribution's metadata configuration. References are stored compactly, as a distribution can have
+ * hundreds of thousands of them: type names are interned, keys of all types share one string table and canonical UUIDs
+ * are packed into primitive arrays (see {@link ReferenceMap}).
  */
 public class MetadataConfig {
 
-	protected Map<String, Map<String, String>> referencesByType = new TreeMap<String, Map<String, String>>();
+	protected Map<String, ReferenceMap> referencesByType = new TreeMap<String, ReferenceMap>();
+
+	protected StringTable keys = new StringTable();
 
 	/**
 	 * Creates an empty metadata config
@@ -40,16 +46,28 @@ public class MetadataConfig {
 	 * @param uuid the UUID
 	 */
 	public void addReference(String type, String key, String uuid) {
-		Map<String, String> references = referencesByType.get(type);
+		ReferenceMap references = referencesByType.get(type);
 
 		if (references == null) {
-			references = new LinkedHashMap<String, String>();
-			referencesByType.put(type, references);
+			references = new ReferenceMap(keys);
+			referencesByType.put(type.intern(), references);
 		}
 
 		references.put(key, uuid);
 	}
 
+	/**
+	 * Adds all references from another metadata configuration, in that configuration's order
+	 * @param other the other configuration
+	 */
+	public void addReferences(MetadataConfig other) {
+		for (String type : other.getConfiguredTypes()) {
+			for (Map.Entry<String, String> reference : other.getReferencesByType(type).entrySet()) {
+				addReference(type, reference.getKey(), reference.getValue());
+			}
+		}
+	}
+
 	/**
 	 * Gets all configured types
 	 * @return the types
@@ -61,12 +79,65 @@ public class MetadataConfig {
 	/**
 	 * Gets references for the given type
 	 * @param type the type
-	 * @return the reference map
+	 * @return the read-only reference map, in the order the references were added
 	 */
 	public Map<String, String> getReferencesByType(String type) {
 		return referencesByType.get(type);
 	}
 
+	/**
+	 * Gets the total number of references of all types
+	 * @return the number of references
+	 */
+	public int getReferenceCount() {
+		int count = 0;
+		for (ReferenceMap references : referencesByType.values()) {
+			count += references.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Estimates the memory used by the references, from the capacities of the arrays they're stored in
+	 * @return the estimated number of bytes
+	 */
+	public long estimateMemory() {
+		long bytes = keys.estimateMemory();
+		for (ReferenceMap references : referencesByType.values()) {
+			bytes += references.estimateMemory();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Finds the first reference to the given UUID. Each type keeps a hashed index of its UUIDs, so this only takes one
+	 * lookup per type. The indexes are built on the first call. Once the configuration is no longer modified, this can
+	 * be called from multiple threads.
+	 * @param uuid the UUID
+	 * @return the reference or null if there is no reference to that UUID
+	 */
+	public Reference findReference(String uuid) {
+		for (Map.Entry<String, ReferenceMap> entry : referencesByType.entrySet()) {
+			String key = entry.getValue().findKey(uuid);
+			if (key != null) {
+				return new Reference(entry.getKey(), key, uuid);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the first reference of the given type to the given UUID
+	 * @param type the type
+	 * @param uuid the UUID
+	 * @return the reference or null if there is no reference of that type to that UUID
+	 */
+	public Reference findReference(String type, String uuid) {
+		ReferenceMap references = referencesByType.get(type);
+		String key = references != null ? references.findKey(uuid) : null;
+		return key != null ? new Reference(type, key, uuid) : null;
+	}
+
 	/**
 	 * Returns a flattened properties list of all metadata references
 	 * @return the properties
@@ -84,4 +155,39 @@ public class MetadataConfig {
 
 		return properties;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * A single metadata reference
+	 */
+	public static class Reference {
+
+		private final String type;
+
+		private final String key;
+
+		private final String uuid;
+
+		public Reference(String type, String key, String uuid) {
+			this.type = type;
+			this.key = key;
+			this.uuid = uuid;
+		}
+
+		public String getType() {
+			return type;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public String getUuid() {
+			return uuid;
+		}
+
+		@Override
+		public String toString() {
+			return type + "." + key;
+		}
+	}
+}
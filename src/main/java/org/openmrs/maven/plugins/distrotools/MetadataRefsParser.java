@@ -0,0 +1,170 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools;
+
+import org.apache.commons.io.IOUtils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming parser for metadata reference files. References are added to a metadata configuration as they are read
+ * so memory use doesn't depend on the size of the file. Enforces the same rules as metadata-refs.xsd, i.e. a root
+ * &lt;refs&gt; element with a type attribute, containing only &lt;ref&gt; elements with key and uuid attributes.
+ */
+public class MetadataRefsParser {
+
+	private static final String XSI_NAMESPACE = "http://www.w3.org/2001/XMLSchema-instance";
+
+	private final XMLInputFactory inputFactory;
+
+	/**
+	 * Creates a new parser
+	 */
+	public MetadataRefsParser() {
+		inputFactory = XMLInputFactory.newInstance();
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
+	/**
+	 * Parses the given reference file
+	 * @param file the reference file
+	 * @param config the metadata configuration to add references to
+	 * @return the number of references parsed
+	 */
+	public int parse(File file, MetadataConfig config) throws IOException, XMLStreamException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			return parse(in, file.getPath(), config);
+		}
+		finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Parses reference XML from the given stream. The stream is not closed.
+	 * @param in the input stream
+	 * @param systemId the system id used in error messages (may be null)
+	 * @param config the metadata configuration to add references to
+	 * @return the number of references parsed
+	 */
+	public int parse(InputStream in, String systemId, MetadataConfig config) throws XMLStreamException {
+		XMLStreamReader reader = inputFactory.createXMLStreamReader(systemId, in);
+		try {
+			nextElement(reader);
+			if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+				throw new XMLStreamException("Missing root element <refs>", reader.getLocation());
+			}
+			checkElementName(reader, "refs");
+			String type = requireAttribute(reader, "type");
+			checkAttributes(reader, "type");
+
+			int count = 0;
+			while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+				checkElementName(reader, "ref");
+				String key = requireAttribute(reader, "key");
+				String uuid = requireAttribute(reader, "uuid");
+				checkAttributes(reader, "key", "uuid");
+
+				// A ref element may contain text but not child elements
+				if (nextElement(reader) != XMLStreamConstants.END_ELEMENT) {
+					throw new XMLStreamException("Element <ref> cannot contain element <" + reader.getLocalName() + ">", reader.getLocation());
+				}
+
+				config.addReference(type, key, uuid);
+				count++;
+			}
+			return count;
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Advances the reader to the next start element, end element or the end of the document
+	 * @param reader the reader
+	 * @return the event type
+	 */
+	protected static int nextElement(XMLStreamReader reader) throws XMLStreamException {
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT || event == XMLStreamConstants.END_ELEMENT) {
+				return event;
+			}
+		}
+		return XMLStreamConstants.END_DOCUMENT;
+	}
+
+	/**
+	 * Checks that the current element has the given name and no namespace
+	 * @param reader the reader
+	 * @param name the expected name
+	 */
+	protected static void checkElementName(XMLStreamReader reader, String name) throws XMLStreamException {
+		String namespace = reader.getNamespaceURI();
+		if (!name.equals(reader.getLocalName()) || (namespace != null && namespace.length() > 0)) {
+			throw new XMLStreamException("Expected element <" + name + "> but found <" + reader.getName() + ">", reader.getLocation());
+		}
+	}
+
+	/**
+	 * Gets the value of a required attribute of the current element
+	 * @param reader the reader
+	 * @param name the attribute name
+	 * @return the attribute value
+	 */
+	protected static String requireAttribute(XMLStreamReader reader, String name) throws XMLStreamException {
+		String value = reader.getAttributeValue(null, name);
+		if (value == null) {
+			throw new XMLStreamException("Attribute '" + name + "' must appear on element <" + reader.getLocalName() + ">", reader.getLocation());
+		}
+		return value;
+	}
+
+	/**
+	 * Checks that the current element has no attributes other than the given ones (or schema instance attributes)
+	 * @param reader the reader
+	 * @param allowed the allowed attribute names
+	 */
+	protected static void checkAttributes(XMLStreamReader reader, String... allowed) throws XMLStreamException {
+		for (int a = 0; a < reader.getAttributeCount(); a++) {
+			String name = reader.getAttributeLocalName(a);
+			String namespace = reader.getAttributeNamespace(a);
+			if (XSI_NAMESPACE.equals(namespace)) {
+				continue;
+			}
+			boolean found = false;
+			for (String allowedName : allowed) {
+				if (allowedName.equals(name) && (namespace == null || namespace.length() == 0)) {
+					found = true;
+					break;
+				}
+			}
+			if (!found) {
+				throw new XMLStreamException("Attribute '" + reader.getAttributeName(a) + "' is not allowed on element <" + reader.getLocalName() + ">", reader.getLocation());
+			}
+		}
+	}
+}
@@ -0,0 +1,209 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.mojo;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.openmrs.maven.plugins.distrotools.util.BuildMetrics;
+import org.openmrs.maven.plugins.distrotools.util.FileScanner;
+import org.openmrs.maven.plugins.distrotools.util.FileUtils;
+import org.openmrs.maven.plugins.distrotools.util.SessionCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Base class for all goals of this plugin. Finds input files, optionally records build metrics for each execution and
+ * provides a cache shared by all executions in the same build.
+ */
+public abstract class AbstractDistroToolsMojo extends AbstractMojo {
+
+	// Glob patterns of input files to include, relative to the input directory (defaults to all files with the goal's
+	// input file extension)
+	@Parameter
+	private String[] includes;
+
+	// Glob patterns of input files and directories to exclude, relative to the input directory
+	@Parameter
+	private String[] excludes;
+
+	// Whether to scan the sub-directories of input directories in parallel
+	@Parameter(property = "parallelScan", defaultValue = "false")
+	private boolean parallelScan;
+
+	// Whether to write a metrics report for each execution
+	@Parameter(property = "metrics", defaultValue = "false")
+	private boolean metrics;
+
+	// Directory in which metrics reports are written
+	@Parameter(property = "metricsDirectory", required = true, defaultValue = "${project.build.directory}/distrotools")
+	private File metricsDirectory;
+
+	// Number of slowest files to list in metrics reports
+	@Parameter(property = "metricsSlowestFiles", defaultValue = "10")
+	private int metricsSlowestFiles;
+
+	@Parameter(defaultValue = "${session}", readonly = true)
+	private MavenSession session;
+
+	@Parameter(defaultValue = "${plugin.version}", readonly = true)
+	private String pluginVersion;
+
+	private BuildMetrics buildMetrics;
+
+	private SessionCache sessionCache;
+
+	/**
+	 * Finds the input files in the given directory
+	 * @param directory the input directory
+	 * @param extension the default input file extension, used if no include patterns are configured
+	 * @return the input files sorted by relative path
+	 */
+	protected List<File> scanFiles(File directory, String extension) throws IOException {
+		return createScanner(extension).scan(directory);
+	}
+
+	/**
+	 * Creates a scanner for input files, using the configured include and exclude patterns
+	 * @param extension the default input file extension, used if no include patterns are configured
+	 * @return the scanner
+	 */
+	protected FileScanner createScanner(String extension) {
+		String[] patterns = includes != null && includes.length > 0 ? includes : new String[] { FileUtils.getExtensionPattern(extension) };
+		return new FileScanner(patterns, excludes, parallelScan);
+	}
+
+	/**
+	 * Gets the version of this plugin
+	 * @return the version
+	 */
+	protected String getPluginVersion() {
+		return pluginVersion;
+	}
+
+	/**
+	 * Gets the version of this plugin's code, for caches of results which depend on it between builds. A snapshot of
+	 * the plugin can be rebuilt without its version changing, so its version includes the digest of the plugin jar.
+	 * @return the version or null if it can't be determined, i.e. for a snapshot which wasn't loaded from a jar
+	 */
+	protected String getPluginCodeVersion() throws IOException {
+		if (pluginVersion == null || !pluginVersion.endsWith("-SNAPSHOT")) {
+			return pluginVersion;
+		}
+		File pluginFile = getPluginFile();
+		if (pluginFile == null || !pluginFile.isFile()) {
+			return null;
+		}
+		return pluginVersion + "/" + getSessionCache().getFileHashes().getHash(pluginFile);
+	}
+
+	/**
+	 * Gets the jar file or class directory from which this plugin was loaded
+	 * @return the file or null if it can't be determined
+	 */
+	protected File getPluginFile() {
+		CodeSource source = AbstractDistroToolsMojo.class.getProtectionDomain().getCodeSource();
+		if (source == null || source.getLocation() == null) {
+			return null;
+		}
+		try {
+			return new File(source.getLocation().toURI());
+		}
+		catch (URISyntaxException | IllegalArgumentException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the cache shared by all goal executions in this build. Sessions are cloned for each module in parallel
+	 * builds, so the cache is keyed by the session's execution request which all the clones share.
+	 * @return the cache
+	 */
+	protected synchronized SessionCache getSessionCache() {
+		if (sessionCache == null) {
+			sessionCache = SessionCache.forBuild(session != null ? session.getRequest() : null);
+		}
+		return sessionCache;
+	}
+
+	/**
+	 * Gets a value from the cache shared by all goal executions in this build, loading it if necessary. If another
+	 * execution loaded the value, then the loader's metrics and log messages belong to that execution, so the time spent
+	 * getting the value is recorded as the cached phase of this execution instead.
+	 * @param key the cache key
+	 * @param description the description of the value for the log, e.g. metadata references
+	 * @param loader the loader
+	 * @return the value
+	 * @throws Exception the exception thrown by the loader
+	 */
+	protected <T> T getShared(String key, String description, final Callable<T> loader) throws Exception {
+		final AtomicBoolean loaded = new AtomicBoolean();
+		long start = getMetrics().start();
+
+		T value = getSessionCache().get(key, new Callable<T>() {
+			public T call() throws Exception {
+				loaded.set(true);
+				return loader.call();
+			}
+		});
+
+		if (!loaded.get()) {
+			getMetrics().addPhaseTime("cached", start);
+			getLog().info("Using " + description + " already loaded by this build");
+		}
+		return value;
+	}
+
+	/**
+	 * Starts collecting metrics for a goal execution
+	 * @param goal the goal name
+	 */
+	protected void startMetrics(String goal) {
+		buildMetrics = new BuildMetrics(goal);
+	}
+
+	/**
+	 * Gets the metrics for the current goal execution. Metrics are always collected as that is cheap, but only written
+	 * if enabled.
+	 * @return the metrics
+	 */
+	protected BuildMetrics getMetrics() {
+		if (buildMetrics == null) {
+			buildMetrics = new BuildMetrics(getClass().getSimpleName());
+		}
+		return buildMetrics;
+	}
+
+	/**
+	 * Writes the metrics report for the current goal execution, if enabled
+	 */
+	protected void finishMetrics() {
+		if (metrics && buildMetrics != null) {
+			try {
+				File report = buildMetrics.writeReports(metricsDirectory, metricsSlowestFiles);
+				getLog().info("Wrote metrics report " + report.getPath());
+			}
+			catch (IOException ex) {
+				getLog().warn("Unable to write metrics report", ex);
+			}
+		}
+	}
+}
@@ -0,0 +1,305 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.mojo;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.openmrs.maven.plugins.distrotools.util.BuildManifest;
+import org.openmrs.maven.plugins.distrotools.util.FileUtils;
+import org.openmrs.maven.plugins.distrotools.util.InputFingerprint;
+import org.openmrs.maven.plugins.distrotools.util.SourceTemplate;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Base class for goals which generate source and filter files. Generated files are encoded as UTF-8, and files whose
+ * content hasn't changed are not rewritten, so their timestamps don't trigger recompilation of dependent code. Each
+ * goal records a digest of its inputs in a manifest, so that it can skip all work if nothing has changed.
+ */
+public abstract class AbstractGeneratorMojo extends AbstractDistroToolsMojo {
+
+	protected static final Charset OUTPUT_CHARSET = Charset.forName("UTF-8");
+
+	/**
+	 * Renders the content of a generated file
+	 */
+	protected interface OutputRenderer {
+
+		/**
+		 * Renders the content
+		 * @param writer the writer
+		 */
+		void render(Writer writer) throws IOException;
+	}
+
+	// Directory of project templates which override the templates provided by this plugin
+	@Parameter(property = "templateDirectory", defaultValue = "src/main/distro/templates")
+	private File templateDirectory;
+
+	// Directory of the manifests which record the inputs and outputs of each goal's last execution
+	@Parameter(property = "manifestDirectory", required = true, defaultValue = "${project.build.directory}/distrotools")
+	private File manifestDirectory;
+
+	// Whether to skip generation if the inputs haven't changed since the last execution and the outputs still exist
+	@Parameter(property = "skipIfUpToDate", defaultValue = "true")
+	private boolean skipIfUpToDate;
+
+	@Parameter(defaultValue = "${basedir}", readonly = true)
+	private File baseDirectory;
+
+	private final Map<String, SourceTemplate> templates = new HashMap<String, SourceTemplate>();
+
+	private final Map<String, String> templateDigests = new HashMap<String, String>();
+
+	// Modification times and sizes of the override files that templates were loaded from (null for plugin templates)
+	private final Map<String, String> templateStamps = new HashMap<String, String>();
+
+	private final Set<File> outputFiles = new HashSet<File>();
+
+	private final List<File> previousOutputs = new ArrayList<File>();
+
+	private int filesWritten;
+
+	private int filesSkipped;
+
+	/**
+	 * Writes a generated file by streaming its content to a temporary file next to it, which then replaces the file
+	 * unless the existing file already has exactly that content. This avoids holding large files in memory. Time spent
+	 * in the renderer is recorded as the render phase, and the rest as the write phase.
+	 * @param outputFile the output file
+	 * @param renderer the content renderer
+	 */
+	protected void writeOutput(File outputFile, OutputRenderer renderer) throws IOException {
+		long start = getMetrics().start();
+
+		// Make sub-folders if necessary
+		if (outputFile.getParentFile() != null && !outputFile.getParentFile().exists()) {
+			outputFile.getParentFile().mkdirs();
+		}
+
+		File tempFile = new File(outputFile.getPath() + ".tmp");
+		long renderNanos;
+		try {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), OUTPUT_CHARSET));
+			boolean rendered = false;
+			try {
+				long renderStart = getMetrics().start();
+				renderer.render(writer);
+				getMetrics().addPhaseTime("render", renderStart);
+				renderNanos = System.nanoTime() - renderStart;
+
+				writer.close();
+				rendered = true;
+			}
+			finally {
+				if (!rendered) {
+					IOUtils.closeQuietly(writer);
+				}
+			}
+
+			logOutput(outputFile, FileUtils.replaceIfChanged(outputFile, tempFile));
+		}
+		finally {
+			// Only left behind if rendering or replacing the output failed
+			if (tempFile.exists()) {
+				tempFile.delete();
+			}
+		}
+
+		getMetrics().addPhaseTime("write", start + renderNanos);
+	}
+
+	/**
+	 * Gets a compiled template, loading it on first use. A template file with the same name in the template directory
+	 * overrides the template provided by this plugin. The template is loaded again if its override file has been
+	 * added, changed or removed since, e.g. whilst watching.
+	 * @param name the template name, e.g. Constant.java.template
+	 * @return the template
+	 * @throws IOException if there is no such template or it can't be read
+	 */
+	protected SourceTemplate getTemplate(String name) throws IOException {
+		File override = templateDirectory != null ? new File(templateDirectory, name) : null;
+		String stamp = override != null && override.isFile() ? override.lastModified() + "|" + override.length() : null;
+
+		SourceTemplate template = templates.get(name);
+		if (template == null || !equal(stamp, templateStamps.get(name))) {
+			InputStream in;
+			if (stamp != null) {
+				getLog().info("Using template " + override.getPath());
+				in = new FileInputStream(override);
+			}
+			else {
+				in = getClass().getClassLoader().getResourceAsStream(name);
+				if (in == null) {
+					throw new IOException("Template " + name + " not found");
+				}
+			}
+
+			try {
+				String text = IOUtils.toString(in, OUTPUT_CHARSET.name());
+				template = SourceTemplate.compile(text);
+				templateDigests.put(name, FileUtils.digest(new ByteArrayInputStream(text.getBytes(OUTPUT_CHARSET.name()))));
+			}
+			finally {
+				IOUtils.closeQuietly(in);
+			}
+			templates.put(name, template);
+			templateStamps.put(name, stamp);
+		}
+		return template;
+	}
+
+	/**
+	 * Creates a fingerprint of this goal's inputs, starting with the plugin version and the given templates
+	 * @param templateNames the names of the templates used by the goal
+	 * @return the fingerprint
+	 */
+	protected InputFingerprint createFingerprint(String... templateNames) throws IOException {
+		InputFingerprint fingerprint = new InputFingerprint();
+		fingerprint.add("pluginVersion", getPluginVersion());
+		for (String name : templateNames) {
+			getTemplate(name);
+			fingerprint.add("template:" + name, templateDigests.get(name));
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Checks whether the last execution of the given goal had the same input digest and its outputs still exist. If not,
+	 * the old manifest is deleted so that a failed execution can't leave behind a manifest for other outputs.
+	 * @param goal the goal name
+	 * @param digest the input digest
+	 * @return true if generation can be skipped
+	 */
+	protected boolean isUpToDate(String goal, String digest) throws IOException {
+		File manifestFile = getManifestFile(goal);
+		BuildManifest manifest = BuildManifest.load(manifestFile);
+
+		previousOutputs.clear();
+		if (manifest != null) {
+			previousOutputs.addAll(manifest.getOutputFiles(getBaseDirectory()));
+		}
+
+		if (skipIfUpToDate && manifest != null && manifest.isUpToDate(digest, getBaseDirectory())) {
+			getLog().info("Inputs unchanged since the last build, skipping generation of " + manifest.getOutputs().size() + " files");
+			return true;
+		}
+
+		if (manifestFile.exists() && !manifestFile.delete()) {
+			throw new IOException("Unable to delete " + manifestFile.getPath());
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the outputs recorded in the manifest of the last execution, as loaded by {@link #isUpToDate(String, String)}
+	 * @return the output files
+	 */
+	protected List<File> getPreviousOutputs() {
+		return previousOutputs;
+	}
+
+	/**
+	 * Saves the manifest of the given goal, with all files generated by this execution as its outputs
+	 * @param goal the goal name
+	 * @param digest the input digest
+	 */
+	protected void saveManifest(String goal, String digest) throws IOException {
+		List<String> outputs = new ArrayList<String>();
+		for (File outputFile : outputFiles) {
+			outputs.add(getRelativePath(outputFile));
+		}
+
+		new BuildManifest(digest, outputs).save(getManifestFile(goal), goal);
+	}
+
+	/**
+	 * Gets the path of a file relative to the project directory if it's inside it, so that paths in fingerprints and
+	 * manifests don't depend on where the project is checked out
+	 * @param file the file
+	 * @return the path, using / as the separator
+	 */
+	protected String getRelativePath(File file) throws IOException {
+		String base = getBaseDirectory().getCanonicalPath() + File.separator;
+		String path = file.getCanonicalPath();
+		return (path.startsWith(base) ? path.substring(base.length()) : path).replace(File.separatorChar, '/');
+	}
+
+	private static boolean equal(String value1, String value2) {
+		return value1 == null ? value2 == null : value1.equals(value2);
+	}
+
+	private File getManifestFile(String goal) {
+		return new File(manifestDirectory, goal + ".manifest");
+	}
+
+	private File getBaseDirectory() {
+		return baseDirectory != null ? baseDirectory : new File(".");
+	}
+
+	/**
+	 * Sets the directory of template overrides
+	 * @param templateDirectory the directory (may be null)
+	 */
+	protected void setTemplateDirectory(File templateDirectory) {
+		this.templateDirectory = templateDirectory;
+	}
+
+	private void logOutput(File outputFile, boolean written) {
+		outputFiles.add(outputFile);
+
+		if (written) {
+			filesWritten++;
+			getMetrics().addBytesWritten(outputFile.length());
+			getLog().info("Generated " + outputFile.getPath());
+		}
+		else {
+			filesSkipped++;
+			getLog().debug("Skipped unchanged " + outputFile.getPath());
+		}
+	}
+
+	/**
+	 * Forgets the files generated so far, so that the output summary and manifest only cover the files generated after
+	 * this, e.g. by one pass of the watch goal
+	 */
+	protected void resetOutputs() {
+		outputFiles.clear();
+		filesWritten = 0;
+		filesSkipped = 0;
+	}
+
+	/**
+	 * Logs how many generated files were written and how many were left unchanged
+	 */
+	protected void logOutputSummary() {
+		getLog().info("Wrote " + filesWritten + " files, skipped " + filesSkipped + " unchanged files");
+	}
+}
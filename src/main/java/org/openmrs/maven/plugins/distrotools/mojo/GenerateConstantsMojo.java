@@ -14,28 +14,30 @@
 
 package org.openmrs.maven.plugins.distrotools.mojo;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.codehaus.jackson.JsonNode;
-import org.codehaus.jackson.map.ObjectMapper;
-import org.codehaus.jackson.node.ArrayNode;
-import org.codehaus.jackson.node.ObjectNode;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.openmrs.maven.plugins.distrotools.util.BuildMetrics;
 import org.openmrs.maven.plugins.distrotools.util.FileUtils;
+import org.openmrs.maven.plugins.distrotools.util.SourceTemplate;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * Goal which generates two things from the distribution's constants configuration
@@ -43,7 +45,7 @@ import java.util.Map;
  *  2. A properties file for filtering of resources containing constant references (constants.properties)
  */
 @Mojo(name = "generate-constants", defaultPhase = LifecyclePhase.GENERATE_SOURCES)
-public class GenerateConstantsMojo extends AbstractMojo {
+public class GenerateConstantsMojo extends AbstractGeneratorMojo {
 
 	// Metadata configuration directory
 	@Parameter(property = "metadataDirectory", required = true, defaultValue = "src/main/distro/constants")
@@ -58,6 +60,18 @@ public class GenerateConstantsMojo extends AbstractMojo {
 	@Parameter(property = "outputFilterFile", required = true, defaultValue = "${project.build.directory}/constants.properties")
 	private File outputFilterFile;
 
+	// Whether to generate int, long, double and boolean constants and arrays from JSON numbers and booleans
+	@Parameter(property = "typedConstants", defaultValue = "false")
+	private boolean typedConstants;
+
+	// Shared by all loads as it's thread-safe and expensive to create
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private static final String GOAL = "generate-constants";
+
+	// Name of the template for generated source files
+	private static final String GEN_SOURCE_TEMPLATE = "Constant.java.template";
+
 	/**
 	 * Executes the generate goal
 	 * @throws MojoExecutionException if an error occurs
@@ -66,10 +80,35 @@ public class GenerateConstantsMojo extends AbstractMojo {
 		if (!metadataDirectory.exists() || !metadataDirectory.isDirectory()) {
 			throw new MojoFailureException("Metadata configuration directory " + metadataDirectory + " doesn't exist or is not a directory");
 		}
+		startMetrics(GOAL);
 		try {
-			List<ConstantClass> constantClasses = loadFromDirectory(metadataDirectory, getLog());
+			long start = getMetrics().start();
+			final List<File> configFiles = scanFiles(metadataDirectory, "json");
+			getMetrics().addPhaseTime("discovery", start);
+
+			String digest = createFingerprint(GEN_SOURCE_TEMPLATE)
+					.addFiles(metadataDirectory, configFiles, getSessionCache().getFileHashes())
+					.add("outputDirectory", getRelativePath(outputDirectory))
+					.add("outputPackage", outputPackage)
+					.add("outputFilterFile", getRelativePath(outputFilterFile))
+					.add("typedConstants", typedConstants)
+					.getDigest();
+			if (isUpToDate(GOAL, digest)) {
+				return;
+			}
+
+			// Other modules of this build may already have loaded the same files
+			String cacheKey = "constants:" + FileUtils.stampDigest(configFiles);
+			List<ConstantClass> constantClasses = getShared(cacheKey, "constant classes", new Callable<List<ConstantClass>>() {
+				public List<ConstantClass> call() throws Exception {
+					return loadFromFiles(configFiles, getLog(), getMetrics());
+				}
+			});
+
 			generateSourceFiles(constantClasses, outputDirectory, outputPackage);
 			generateMetadataFilter(constantClasses, outputFilterFile);
+			saveManifest(GOAL, digest);
+			logOutputSummary();
 		}
 		catch (MojoFailureException ex) {
 			throw ex;
@@ -77,29 +116,63 @@ public class GenerateConstantsMojo extends AbstractMojo {
 		catch (Exception ex) {
 			throw new MojoExecutionException("Unexpected error", ex);
 		}
+		finally {
+			finishMetrics();
+		}
 	}
 
 	/**
+	 * Loads constant classes from the JSON files in the given directory. Files are read as token streams so no JSON
+	 * tree is built.
 	 * @param directory the directory
 	 * @param log the log
 	 * @return List of ConstantClass that represent each individual top-level class file to generate
 	 */
 	public static List<ConstantClass> loadFromDirectory(File directory, Log log) throws MojoFailureException {
+		List<File> configFiles;
+		try {
+			configFiles = FileUtils.getFilesInDirectory(directory, "json");
+		}
+		catch (IOException e) {
+			throw new MojoFailureException("An error occurred loading constants", e);
+		}
+		return loadFromFiles(configFiles, log, new BuildMetrics("generate-constants"));
+	}
+
+	/**
+	 * Loads constant classes from the given JSON files, recording metrics
+	 * @param configFiles the JSON files
+	 * @param log the log
+	 * @param metrics the build metrics
+	 * @return List of ConstantClass that represent each individual top-level class file to generate
+	 */
+	public static List<ConstantClass> loadFromFiles(List<File> configFiles, Log log, BuildMetrics metrics) throws MojoFailureException {
 		List<ConstantClass> ret = new ArrayList<ConstantClass>();
 		try {
-			List<File> configFiles = FileUtils.getFilesInDirectory(directory, "json");
-			log.info("Found " + configFiles + " constant files to process");
-			ObjectMapper mapper = new ObjectMapper();
+			log.info("Found " + configFiles.size() + " constant files to process");
 			for (File configFile : configFiles) {
 				log.info("In constant file " + configFile.getName());
-				ObjectNode node = mapper.readValue(configFile, ObjectNode.class);
-				// Each top level node in a json file becomes a new class with the name of that node
-				Iterator<String> fieldNames = node.getFieldNames();
-				while (fieldNames.hasNext()) {
-					String className = fieldNames.next();
-					log.info("Getting information to produce class " + className);
-					ret.add(createConstantClass(className, node.get(className)));
+				long start = metrics.start();
+				JsonParser parser = JSON_FACTORY.createJsonParser(configFile);
+				try {
+					if (parser.nextToken() != JsonToken.START_OBJECT) {
+						throw new JsonParseException("Expected an object", parser.getCurrentLocation());
+					}
+					// Each top level node in a json file becomes a new class with the name of that node
+					while (parser.nextToken() == JsonToken.FIELD_NAME) {
+						String className = parser.getCurrentName();
+						if (parser.nextToken() != JsonToken.START_OBJECT) {
+							throw new JsonParseException("Expected an object for class " + className, parser.getCurrentLocation());
+						}
+						log.info("Getting information to produce class " + className);
+						ret.add(createConstantClass(className, parser));
+					}
+				}
+				finally {
+					parser.close();
 				}
+				metrics.addPhaseTime("parse", start);
+				metrics.addFile(configFile.getPath(), configFile.length(), start);
 			}
 		}
 		catch (Exception e) {
@@ -109,96 +182,133 @@ public class GenerateConstantsMojo extends AbstractMojo {
 	}
 
 	/**
+	 * Creates a constant class from the object at the parser's current position. On return the parser is positioned
+	 * at the end of that object.
 	 * @param className the name of the class to create
-	 * @param node the JsonNode representing the details of the class
+	 * @param parser the JSON parser, positioned at the start of the object representing the details of the class
 	 * @return the Constant class that represents the passed information
 	 */
-	protected static ConstantClass createConstantClass(String className, JsonNode node) {
+	protected static ConstantClass createConstantClass(String className, JsonParser parser) throws IOException {
 		ConstantClass cc = new ConstantClass();
 		cc.setClassName(className);
 
-		Iterator<String> fieldNameIterator = node.getFieldNames();
-		while (fieldNameIterator.hasNext()) {
-			String key = fieldNameIterator.next();
-			JsonNode jsonNode = node.get(key);
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String key = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
 
 			// This allows us to have nested subclasses
-			if (jsonNode.isObject()) {
-				cc.getSubclasses().add(createConstantClass(key, jsonNode));
+			if (token == JsonToken.START_OBJECT) {
+				cc.getSubclasses().add(createConstantClass(key, parser));
 			}
 			else {
 				Object val = null;
 				// This allows us to have list constants
-				if (jsonNode.isArray()) {
-					ArrayNode arrayNode = (ArrayNode) jsonNode;
-					Iterator<JsonNode> listIterator = arrayNode.getElements();
+				if (token == JsonToken.START_ARRAY) {
 					List l = new ArrayList();
-					while (listIterator.hasNext()) {
-						JsonNode listElement = listIterator.next();
-						l.add(listElement.asText());
+					while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+						l.add(readValue(parser, token));
 					}
 					val = l;
 				}
 				// This allows us to have scalar constants
 				else {
-					val = jsonNode.asText();
+					val = readValue(parser, token);
 				}
-				cc.getConstantValues().put(key, val);  // TODO: Maybe support other data types, like numbers?
+				cc.getConstantValues().put(key, val);
 			}
 		}
 		return cc;
 	}
 
+	/**
+	 * Gets the value at the parser's current position. Numbers and booleans keep their type, so that typed constants
+	 * can be generated, and every value's string form is the same as JsonNode.asText() would give.
+	 * @param parser the JSON parser
+	 * @param token the current token
+	 * @return the value, i.e. a string, number or boolean
+	 */
+	protected static Object readValue(JsonParser parser, JsonToken token) throws IOException {
+		switch (token) {
+			case START_OBJECT:
+			case START_ARRAY:
+				parser.skipChildren();
+				return "";
+			case VALUE_NUMBER_INT:
+				return parser.getNumberValue();
+			case VALUE_NUMBER_FLOAT:
+				return parser.getDoubleValue();
+			case VALUE_TRUE:
+			case VALUE_FALSE:
+				return parser.getBooleanValue();
+			default:
+				return parser.getText();
+		}
+	}
+
 	/**
 	 * Generates the constant source files
 	 * @param constantClasses the List of ConstantClasses representing the source files
 	 * @param directory the output directory
 	 * @param pkgName the output package name
 	 */
-	protected void generateSourceFiles(List<ConstantClass> constantClasses, File directory, String pkgName) throws IOException {
-		for (ConstantClass cc : constantClasses) {
-
-			String template = IOUtils.toString(getClass().getClassLoader().getResourceAsStream("Constant.java.template"));
-			template = template.replace("{PACKAGE}", pkgName);
-			StringBuilder sb = new StringBuilder();
-			generateAndAppendClassBody(sb, cc, 0);
-			template = template.replace("{CLASS_BODY}", sb.toString());
+	protected void generateSourceFiles(List<ConstantClass> constantClasses, File directory, String pkgName) throws IOException, MojoFailureException {
+		final SourceTemplate template = getTemplate(GEN_SOURCE_TEMPLATE);
+		final Map<String, Object> values = new HashMap<String, Object>();
+		values.put("PACKAGE", pkgName);
+
+		// Arrays need to know which elements refer to other constants
+		final Map<String, ConstantNode> constantNodes = resolveConstants(constantClasses);
+
+		for (final ConstantClass cc : constantClasses) {
+			values.put("CLASS_BODY", new SourceTemplate.Section() {
+				public void render(Appendable out) throws IOException {
+					generateAndAppendClassBody(out, cc, 0, cc.getClassName(), constantNodes);
+				}
+			});
 
 			String outputPath = directory.getPath() + File.separator + pkgName.replace(".", File.separator) + File.separator + cc.getClassName() + ".java";
-			File outputFile = new File(outputPath);
-
-			// Make sub-folders if necessary
-			if (!outputFile.getParentFile().exists()) {
-				outputFile.getParentFile().mkdirs();
-			}
-
-			FileWriter writer = new FileWriter(outputFile);
-			IOUtils.write(template, writer);
-			writer.close();
-
-			getLog().info("Generated " + outputFile.getPath());
+			writeOutput(new File(outputPath), new OutputRenderer() {
+				public void render(Writer writer) throws IOException {
+					template.render(writer, values);
+				}
+			});
 		}
 	}
 
-	protected void generateAndAppendClassBody(StringBuilder sb, ConstantClass cc, int level) {
+	protected void generateAndAppendClassBody(Appendable sb, ConstantClass cc, int level) throws IOException, MojoFailureException {
+		generateAndAppendClassBody(sb, cc, level, cc.getClassName(), resolveConstants(Collections.singletonList(cc)));
+	}
+
+	/**
+	 * Generates the body of a constant class and its subclasses
+	 * @param sb the output
+	 * @param cc the constant class
+	 * @param level the nesting level
+	 * @param className the full name of the class, e.g. Top.Sub
+	 * @param constantNodes all constants by name, with their resolved values, which array elements may refer to
+	 */
+	protected void generateAndAppendClassBody(Appendable sb, ConstantClass cc, int level, String className, Map<String, ConstantNode> constantNodes) throws IOException {
 		String classIndent = indent(level);
 		String memberIndent = classIndent+indent(1);
 		sb.append(classIndent).append("public ").append(level == 0 ? "" : "static ").append("class ");
 		sb.append(cc.getClassName()).append(" {").append(level == 0 ? newLine() : "");
 		for (ConstantClass subclass : cc.getSubclasses()) {
 			sb.append(newLine());
-			generateAndAppendClassBody(sb, subclass, level + 1);
+			generateAndAppendClassBody(sb, subclass, level + 1, className + "." + subclass.getClassName(), constantNodes);
 			sb.append(newLine());
 		}
 		sb.append(newLine());
 		for (Map.Entry<String, Object> constant : cc.getConstantValues().entrySet()) {
 			sb.append(memberIndent).append("public static final ");
-			if (constant.getValue() instanceof List) {
+			if (typedConstants) {
+				appendTypedConstant(sb, constant.getKey(), constant.getValue(), className, constantNodes);
+			}
+			else if (constant.getValue() instanceof List) {
 				List elements = (List)constant.getValue();
 				sb.append("String[] ").append(constant.getKey()).append(" = { ");
 				for (int i=0; i<elements.size(); i++) {
 					sb.append(i == 0 ? "" : ", ");
-					sb.append(elements.get(i));
+					appendStringElement(sb, elements.get(i), className, constantNodes);
 				}
 				sb.append(" };");
 			}
@@ -210,8 +320,148 @@ public class GenerateConstantsMojo extends AbstractMojo {
 		sb.append(classIndent).append("}");
 	}
 
+	/**
+	 * Appends the declaration of a typed constant, without its modifiers. Numbers and booleans become primitives, which
+	 * javac can inline, except for integers too large for a long. Arrays whose elements are all of one primitive type
+	 * become arrays of that type, and other arrays become string arrays.
+	 * @param sb the output
+	 * @param name the constant name
+	 * @param value the constant value
+	 * @param className the full name of the constant's class
+	 * @param constantNodes all constants by name
+	 */
+	protected void appendTypedConstant(Appendable sb, String name, Object value, String className, Map<String, ConstantNode> constantNodes) throws IOException {
+		if (!(value instanceof List)) {
+			String type = primitiveType(value);
+			sb.append(type != null ? type : "String").append(" ").append(name).append(" = ").append(typedLiteral(value, type)).append(";");
+			return;
+		}
+
+		List elements = (List) value;
+		String elementType = elements.isEmpty() ? null : primitiveType(elements.get(0));
+		for (Object element : elements) {
+			String type = primitiveType(element);
+			if (type == null || elementType == null) {
+				elementType = null;
+			}
+			else if (!type.equals(elementType)) {
+				// Numeric types widen to whichever can hold every element, but booleans don't mix with numbers
+				elementType = !type.equals("boolean") && !elementType.equals("boolean") ? widerType(type, elementType) : null;
+			}
+		}
+
+		sb.append(elementType != null ? elementType : "String").append("[] ").append(name).append(" = { ");
+		for (int i = 0; i < elements.size(); i++) {
+			Object element = elements.get(i);
+			sb.append(i == 0 ? "" : ", ");
+			if (elementType != null) {
+				sb.append(typedLiteral(element, primitiveType(element)));
+			}
+			else {
+				appendStringElement(sb, element, className, constantNodes);
+			}
+		}
+		sb.append(" };");
+	}
+
+	/**
+	 * Appends an element of a string array. An element which names a scalar constant refers to it by its full name, or
+	 * through String.valueOf if it's a typed primitive. An element which names a list constant is that list's resolved
+	 * value, as in the filter file, since an array can't be an element of a string array. Other elements are string
+	 * literals.
+	 * @param sb the output
+	 * @param element the element
+	 * @param className the full name of the array constant's class
+	 * @param constantNodes all constants by name, with their resolved values
+	 */
+	protected void appendStringElement(Appendable sb, Object element, String className, Map<String, ConstantNode> constantNodes) throws IOException {
+		ConstantNode target = findReferencedConstant(String.valueOf(element), className, constantNodes);
+		if (target == null) {
+			sb.append(quoted(element));
+		}
+		else if (target.value instanceof List) {
+			sb.append(quoted(target.resolved));
+		}
+		else if (typedConstants && primitiveType(target.value) != null) {
+			sb.append("String.valueOf(").append(target.name).append(")");
+		}
+		else {
+			sb.append(target.name);
+		}
+	}
+
+	/**
+	 * Gets the primitive type of a typed constant value
+	 * @param value the value
+	 * @return the type or null if the value is generated as a string
+	 */
+	protected static String primitiveType(Object value) {
+		if (value instanceof Integer) {
+			return "int";
+		}
+		if (value instanceof Long) {
+			return "long";
+		}
+		if (value instanceof Double) {
+			return ((Double) value).isInfinite() || ((Double) value).isNaN() ? null : "double";
+		}
+		if (value instanceof Boolean) {
+			return "boolean";
+		}
+		return null;
+	}
+
+	private static String widerType(String type1, String type2) {
+		return type1.equals("double") || type2.equals("double") ? "double" : "long";
+	}
+
+	/**
+	 * Gets the Java literal of a typed constant value
+	 * @param value the value
+	 * @param type the value's primitive type (null if it's generated as a string)
+	 * @return the literal
+	 */
+	protected String typedLiteral(Object value, String type) {
+		if (type == null) {
+			return quoted(value);
+		}
+		return "long".equals(type) ? value + "L" : String.valueOf(value);
+	}
+
+	/**
+	 * Sets whether typed constants are generated
+	 * @param typedConstants true to generate typed constants
+	 */
+	protected void setTypedConstants(boolean typedConstants) {
+		this.typedConstants = typedConstants;
+	}
+
+	/**
+	 * Gets the Java string literal of a value
+	 * @param input the value
+	 * @return the literal
+	 */
 	protected String quoted(Object input) {
-		return "\""+input+"\"";
+		String value = String.valueOf(input);
+		StringBuilder sb = new StringBuilder("\"");
+		for (int c = 0; c < value.length(); c++) {
+			char ch = value.charAt(c);
+			switch (ch) {
+				case '"':
+				case '\\':
+					sb.append('\\').append(ch);
+					break;
+				case '\n':
+					sb.append("\\n");
+					break;
+				case '\r':
+					sb.append("\\r");
+					break;
+				default:
+					sb.append(ch);
+			}
+		}
+		return sb.append("\"").toString();
 	}
 
 	protected String indent(int level) {
@@ -231,51 +481,159 @@ public class GenerateConstantsMojo extends AbstractMojo {
 	 * @param constantClasses the List of ConstantClasses representing the source files
 	 * @param file the output filter file
 	 */
-	protected void generateMetadataFilter(List<ConstantClass> constantClasses, File file) throws IOException {
-		FileWriter writer = null;
-		try {
-			Map<String, String> properties = new LinkedHashMap<String, String>();
-			for (ConstantClass cc : constantClasses) {
-				loadFilterProperties(properties, cc.getClassName(), cc.getClassName(), cc);
+	protected void generateMetadataFilter(List<ConstantClass> constantClasses, File file) throws IOException, MojoFailureException {
+		long start = getMetrics().start();
+		final Map<String, String> properties = resolveFilterProperties(constantClasses);
+		getLog().info("Loaded " + properties.size() + " constant properties");
+		getMetrics().addPhaseTime("render", start);
+
+		writeOutput(file, new OutputRenderer() {
+			public void render(Writer writer) throws IOException {
+				for (Map.Entry<String, String> property : properties.entrySet()) {
+					writer.append(property.getKey()).append("=").append(property.getValue()).append("\n");
+				}
 			}
-			getLog().info("Loaded " + properties.size() + " constant properties");
+		});
+	}
 
-			writer = new FileWriter(file);
-			for (String key : properties.keySet()) {
-				writer.write(key + "=" + properties.get(key) + "\n");
-			}
+	/**
+	 * Resolves the filter property values of the given constant classes. List elements which name another constant,
+	 * either in full or relative to their class or an enclosing class, are replaced by that constant's value. The
+	 * references form a graph over all constants which is resolved depth first, each constant once, so a constant can
+	 * refer to one that's defined later, e.g. in a subclass or another file. A cycle of references is an error.
+	 * @param constantClasses the List of ConstantClasses representing the source files
+	 * @return the property values by name, in the order the constants are defined
+	 */
+	protected static Map<String, String> resolveFilterProperties(List<ConstantClass> constantClasses) throws MojoFailureException {
+		Map<String, String> properties = new LinkedHashMap<String, String>();
+		for (ConstantNode node : resolveConstants(constantClasses).values()) {
+			properties.put(node.name, node.resolved);
 		}
-		finally {
-			IOUtils.closeQuietly(writer);
+		return properties;
+	}
+
+	/**
+	 * Creates the nodes of the given constant classes and resolves their values
+	 * @param constantClasses the List of ConstantClasses representing the source files
+	 * @return the resolved constants by name, in the order they are defined
+	 * @see #resolveFilterProperties(java.util.List)
+	 */
+	protected static Map<String, ConstantNode> resolveConstants(List<ConstantClass> constantClasses) throws MojoFailureException {
+		Map<String, ConstantNode> nodes = new LinkedHashMap<String, ConstantNode>();
+		for (ConstantClass cc : constantClasses) {
+			addConstantNodes(nodes, cc.getClassName(), cc);
+		}
+
+		List<ConstantNode> path = new ArrayList<ConstantNode>();
+		for (ConstantNode node : nodes.values()) {
+			resolve(node, nodes, path);
 		}
+		return nodes;
 	}
 
-	protected void loadFilterProperties(Map<String, String> properties, String topClassName, String currentClassName, ConstantClass constantClass) throws IOException {
+	/**
+	 * Adds a node for each constant of the given class and its subclasses, subclasses first. A constant which is
+	 * defined more than once keeps its first position but takes its last value.
+	 */
+	protected static void addConstantNodes(Map<String, ConstantNode> nodes, String currentClassName, ConstantClass constantClass) {
 		for (ConstantClass subclass : constantClass.getSubclasses()) {
-			loadFilterProperties(properties, topClassName, currentClassName + "." + subclass.getClassName(), subclass);
+			addConstantNodes(nodes, currentClassName + "." + subclass.getClassName(), subclass);
 		}
 		for (Map.Entry<String, Object> e : constantClass.getConstantValues().entrySet()) {
-			String value = e.getValue().toString();
-			if (e.getValue() instanceof List) {
-				StringBuilder sb = new StringBuilder();
-				List l = (List)e.getValue();
-				for (Object o : l) {
-					String element = o.toString();
-					if (properties.containsKey(element)) {
-						element = properties.get(element);
-					}
-					else if (properties.containsKey(topClassName + "." + element)) {
-						element = properties.get(topClassName + "." + element);
-					}
-					sb.append(sb.length() == 0 ? "" : ",").append(element);
-				}
-				value = sb.toString();
+			String name = currentClassName + "." + e.getKey();
+			nodes.put(name, new ConstantNode(name, currentClassName, e.getValue()));
+		}
+	}
+
+	/**
+	 * Resolves the value of a constant, first resolving any constants that it refers to
+	 * @param node the constant
+	 * @param nodes all constants by name
+	 * @param path the constants currently being resolved, used to describe cycles
+	 * @return the value
+	 */
+	private static String resolve(ConstantNode node, Map<String, ConstantNode> nodes, List<ConstantNode> path) throws MojoFailureException {
+		if (node.resolved != null) {
+			return node.resolved;
+		}
+		if (!(node.value instanceof List)) {
+			node.resolved = node.value.toString();
+			return node.resolved;
+		}
+		if (node.resolving) {
+			StringBuilder cycle = new StringBuilder();
+			for (ConstantNode member : path.subList(path.indexOf(node), path.size())) {
+				cycle.append(member.name).append(" -> ");
 			}
-			properties.put(currentClassName + "." + e.getKey(), value);
+			throw new MojoFailureException("Constants refer to each other in a cycle: " + cycle.append(node.name));
+		}
+
+		node.resolving = true;
+		path.add(node);
+
+		StringBuilder sb = new StringBuilder();
+		for (Object o : (List) node.value) {
+			String element = o.toString();
+			ConstantNode target = findReferencedConstant(element, node.className, nodes);
+			sb.append(sb.length() == 0 ? "" : ",").append(target != null ? resolve(target, nodes, path) : element);
+		}
+
+		path.remove(path.size() - 1);
+		node.resolving = false;
+		node.resolved = sb.toString();
+		return node.resolved;
+	}
+
+	/**
+	 * Finds the constant named by a list element, either in full or relative to the list constant's class or one of the
+	 * classes enclosing it, innermost first as Java resolves names, e.g. A in class Top.Sub is Top.Sub.A if that exists
+	 * and otherwise Top.A
+	 * @param element the list element
+	 * @param className the full name of the list constant's class
+	 * @param nodes all constants by name
+	 * @return the constant or null if the element doesn't name one
+	 */
+	protected static ConstantNode findReferencedConstant(String element, String className, Map<String, ConstantNode> nodes) {
+		ConstantNode target = nodes.get(element);
+		for (String scope = className; target == null && scope != null; scope = enclosingClassName(scope)) {
+			target = nodes.get(scope + "." + element);
+		}
+		return target;
+	}
+
+	/**
+	 * Gets the full name of the class enclosing a class
+	 * @param className the full class name, e.g. Top.Sub
+	 * @return the enclosing class name or null if it's a top level class
+	 */
+	private static String enclosingClassName(String className) {
+		int dot = className.lastIndexOf('.');
+		return dot >= 0 ? className.substring(0, dot) : null;
+	}
+
+	/**
+	 * A constant in the reference graph
+	 */
+	static class ConstantNode {
+
+		private final String name;
+
+		private final String className;
+
+		private final Object value;
+
+		private String resolved;
+
+		private boolean resolving;
+
+		private ConstantNode(String name, String className, Object value) {
+			this.name = name;
+			this.className = className;
+			this.value = value;
 		}
 	}
 
-	private static class ConstantClass {
+	static class ConstantClass {
 
 		private String className;
 		private List<ConstantClass> subclasses = new ArrayList<ConstantClass>();
@@ -14,8 +14,6 @@
 
 package org.openmrs.maven.plugins.distrotools.mojo;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
@@ -23,18 +21,27 @@ import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.openmrs.maven.plugins.distrotools.MetadataConfig;
+import org.openmrs.maven.plugins.distrotools.MetadataRefsParser;
+import org.openmrs.maven.plugins.distrotools.util.BuildMetrics;
 import org.openmrs.maven.plugins.distrotools.util.FileUtils;
-import org.openmrs.maven.plugins.distrotools.util.XmlUtils;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.xml.sax.SAXException;
+import org.openmrs.maven.plugins.distrotools.util.SourceTemplate;
 
-import javax.xml.parsers.DocumentBuilder;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Goal which generates two things from the distribution's metadata configuration
@@ -42,7 +49,7 @@ import java.util.Map;
  *  2. A properties file for filtering of resources containing metadata references (metadata.properties)
  */
 @Mojo(name = "generate-metadata-sources", defaultPhase = LifecyclePhase.GENERATE_SOURCES)
-public class GenerateMetadataSourcesMojo extends AbstractMojo {
+public class GenerateMetadataSourcesMojo extends AbstractGeneratorMojo {
 
 	// Metadata configuration directory
 	@Parameter(property = "metadataDirectory", required = true, defaultValue = "src/main/distro/metadata")
@@ -57,9 +64,39 @@ public class GenerateMetadataSourcesMojo extends AbstractMojo {
 	@Parameter(property = "outputFilterFile", required = true, defaultValue = "${project.build.directory}/metadata.properties")
 	private File outputFilterFile;
 
+	// Maximum number of references in a single generated class (0 means no limit). Types with more references are
+	// split into several generated interfaces which their Metadata class implements.
+	@Parameter(property = "maxReferencesPerClass", defaultValue = "0")
+	private int maxReferencesPerClass;
+
+	// What to do about a key defined with different UUIDs, or a UUID used by several references: ignore, warn or fail
+	@Parameter(property = "referenceConflicts", defaultValue = CONFLICTS_WARN)
+	private String referenceConflicts;
+
+	// Number of threads used to parse reference files (0 means the number of available processors)
+	@Parameter(property = "loadThreads", defaultValue = "0")
+	private int loadThreads;
+
+	protected static final String CONFLICTS_IGNORE = "ignore";
+
+	protected static final String CONFLICTS_WARN = "warn";
+
+	protected static final String CONFLICTS_FAIL = "fail";
+
+	private static final String GOAL = "generate-metadata-sources";
+
 	// Name of the generated source file
 	private static final String GEN_SOURCE_NAME = "Metadata.java";
 
+	// Name of the template for generated shard interfaces
+	private static final String GEN_SHARD_TEMPLATE = "MetadataShard.java.template";
+
+	// Name prefix of generated shard interfaces
+	private static final String GEN_SHARD_PREFIX = "Metadata_";
+
+	// Shard source files generated by the last generation of this instance, e.g. by the watch goal
+	private final Set<File> generatedShardFiles = new HashSet<File>();
+
 	/**
 	 * Executes the generate goal
 	 * @throws org.apache.maven.plugin.MojoExecutionException if an error occurs
@@ -69,16 +106,47 @@ public class GenerateMetadataSourcesMojo extends AbstractMojo {
 			throw new MojoFailureException("Metadata configuration directory " + metadataDirectory + " doesn't exist or is not a directory");
 		}
 
-		try {
-			// Instantiate some required DOM tools
-			DocumentBuilder documentBuilder = XmlUtils.createBuilder("metadata-refs.xsd");
+		if (!CONFLICTS_IGNORE.equals(referenceConflicts) && !CONFLICTS_WARN.equals(referenceConflicts) && !CONFLICTS_FAIL.equals(referenceConflicts)) {
+			throw new MojoFailureException("Parameter referenceConflicts must be one of " + CONFLICTS_IGNORE + ", " + CONFLICTS_WARN + " or " + CONFLICTS_FAIL);
+		}
 
+		startMetrics(GOAL);
+		try {
 			// Load provided distribution configuration
-			MetadataConfig distroConfig = loadFromDirectory(metadataDirectory, documentBuilder, getLog());
+			long start = getMetrics().start();
+			final List<File> configFiles = scanFiles(metadataDirectory, "xml");
+			getMetrics().addPhaseTime("discovery", start);
+
+			String digest = createFingerprint(GEN_SOURCE_NAME + ".template", GEN_SHARD_TEMPLATE)
+					.addFiles(metadataDirectory, configFiles, getSessionCache().getFileHashes())
+					.add("outputDirectory", getRelativePath(outputDirectory))
+					.add("outputPackage", outputPackage)
+					.add("outputFilterFile", getRelativePath(outputFilterFile))
+					.add("maxReferencesPerClass", maxReferencesPerClass)
+					.add("referenceConflicts", referenceConflicts)
+					.getDigest();
+			if (isUpToDate(GOAL, digest)) {
+				return;
+			}
+
+			// Other modules of this build may already have loaded the same files
+			String cacheKey = getCacheKey(configFiles);
+			LoadedReferences loaded = getShared(cacheKey, "metadata references", new Callable<LoadedReferences>() {
+				public LoadedReferences call() throws Exception {
+					return loadReferences(configFiles, getLog(), getMetrics(), true, loadThreads);
+				}
+			});
 
-			generateMetadataSource(distroConfig, outputDirectory, outputPackage);
+			// Conflicts are reported by each execution, so they appear in the log of every module
+			reportConflicts(loaded.getConflicts(), getLog(), referenceConflicts);
+			MetadataConfig distroConfig = loaded.getConfig();
+
+			generateMetadataSource(distroConfig, outputDirectory, outputPackage, maxReferencesPerClass);
 
 			generateMetadataFilter(distroConfig, outputFilterFile);
+
+			saveManifest(GOAL, digest);
+			logOutputSummary();
 		}
 		catch (MojoFailureException ex) {
 			throw ex;
@@ -86,115 +154,407 @@ public class GenerateMetadataSourcesMojo extends AbstractMojo {
 		catch (Exception ex) {
 			throw new MojoExecutionException("Unexpected error", ex);
 		}
+		finally {
+			finishMetrics();
+		}
+	}
+
+	/**
+	 * Gets the session cache key of the configuration loaded from the given files. The shared configuration is always
+	 * loaded with its conflicts, so that it doesn't depend on the conflict mode of the goal which loaded it.
+	 * @param configFiles the reference files
+	 * @return the key
+	 */
+	protected static String getCacheKey(List<File> configFiles) throws IOException {
+		return "metadata:" + FileUtils.stampDigest(configFiles);
 	}
 
 	/**
-	 * Loads a metadata configuration from the given directory
+	 * Loads a metadata configuration from the given directory. Reference files are streamed rather than loaded into
+	 * DOM documents.
 	 * @param directory the directory
-	 * @param documentBuilder the DOM document builder
 	 * @param log the log
 	 * @return the configuration
 	 */
-	public static MetadataConfig loadFromDirectory(File directory, DocumentBuilder documentBuilder, Log log) throws MojoFailureException {
-		MetadataConfig config = new MetadataConfig();
+	public static MetadataConfig loadFromDirectory(File directory, Log log) throws MojoFailureException {
+		List<File> configFiles;
+		try {
+			configFiles = FileUtils.getFilesInDirectory(directory, "xml");
+		}
+		catch (IOException ex) {
+			throw new MojoFailureException("Unable to scan " + directory.getPath(), ex);
+		}
+		return loadFromFiles(configFiles, log, new BuildMetrics("generate-metadata-sources"), CONFLICTS_IGNORE, 0);
+	}
+
+	/**
+	 * Loads a metadata configuration from the given reference files, recording metrics, and reports any conflicts
+	 * between them
+	 * @param configFiles the reference files
+	 * @param log the log
+	 * @param metrics the build metrics
+	 * @param conflictMode what to do about conflicts (ignore, warn or fail)
+	 * @param threads the number of parser threads (0 means the number of available processors)
+	 * @return the configuration
+	 * @throws MojoFailureException if a file can't be loaded, or there are conflicts and the mode is fail
+	 * @see #loadReferences(java.util.List, org.apache.maven.plugin.logging.Log, BuildMetrics, boolean, int)
+	 */
+	public static MetadataConfig loadFromFiles(List<File> configFiles, Log log, BuildMetrics metrics, String conflictMode, int threads) throws MojoFailureException {
+		LoadedReferences loaded = loadReferences(configFiles, log, metrics, !CONFLICTS_IGNORE.equals(conflictMode), threads);
+		reportConflicts(loaded.getConflicts(), log, conflictMode);
+		return loaded.getConfig();
+	}
+
+	/**
+	 * Loads a metadata configuration from the given reference files, recording metrics. Files are parsed concurrently
+	 * into separate configurations which are then merged in file order, so the result is the same as parsing them one
+	 * after another. If conflicts are checked, each reference is checked against those merged before it, i.e. for a key
+	 * defined again with a different UUID or a UUID which is already used by another reference.
+	 * @param configFiles the reference files
+	 * @param log the log
+	 * @param metrics the build metrics
+	 * @param checkConflicts whether to check for conflicts
+	 * @param threads the number of parser threads (0 means the number of available processors)
+	 * @return the configuration and the descriptions of any conflicts
+	 * @throws MojoFailureException if a file can't be loaded
+	 */
+	protected static LoadedReferences loadReferences(List<File> configFiles, Log log, BuildMetrics metrics, boolean checkConflicts, int threads) throws MojoFailureException {
+		threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		threads = Math.max(1, Math.min(threads, configFiles.size()));
+
+		int[] counts = new int[configFiles.size()];
+		MetadataConfig[] fileConfigs = parseFiles(configFiles, metrics, threads, counts);
 
-		List<File> configFiles = FileUtils.getFilesInDirectory(directory, "xml");
+		MetadataConfig config = new MetadataConfig();
+		List<MetadataConfig> mergedConfigs = new ArrayList<MetadataConfig>();
+		List<String> conflicts = new ArrayList<String>();
 
-		for (File configFile : configFiles) {
-			try {
-				Document document = documentBuilder.parse(configFile);
-				Node refsNode = XmlUtils.findFirstChild(document, "refs");
-				String type = XmlUtils.findAttribute(refsNode, "type");
-				List<Node> refNodes = XmlUtils.findAllChildren(refsNode, "ref");
+		long start = metrics.start();
+		for (int f = 0; f < fileConfigs.length; f++) {
+			MetadataConfig fileConfig = fileConfigs[f];
+			log.info("Parsed " + counts[f] + " references from " + configFiles.get(f).getAbsolutePath());
 
-				for (Node itemNode : refNodes) {
-					Node keyNode = itemNode.getAttributes().getNamedItem("key");
-					Node uuidNode = itemNode.getAttributes().getNamedItem("uuid");
-					config.addReference(type, keyNode.getTextContent(), uuidNode.getTextContent());
+			if (checkConflicts) {
+				if (counts[f] > fileConfig.getReferenceCount()) {
+					conflicts.add(configFiles.get(f).getPath() + " defines " + (counts[f] - fileConfig.getReferenceCount()) + " keys more than once");
 				}
+				mergedConfigs.add(fileConfig);
+				addReferencesAndCheck(config, fileConfig, configFiles, mergedConfigs, conflicts);
+			}
+			else {
+				config.addReferences(fileConfig);
+				fileConfigs[f] = null;
+			}
+		}
+		metrics.addPhaseTime("merge", start);
 
-				log.info("Parsed " + refNodes.size() + " references from " + configFile.getAbsolutePath());
+		return new LoadedReferences(config, conflicts);
+	}
+
+	/**
+	 * Reports conflicts between metadata references
+	 * @param conflicts the conflict descriptions
+	 * @param log the log
+	 * @param conflictMode what to do about conflicts (ignore, warn or fail)
+	 * @throws MojoFailureException if there are conflicts and the mode is fail
+	 */
+	protected static void reportConflicts(List<String> conflicts, Log log, String conflictMode) throws MojoFailureException {
+		if (conflicts.isEmpty() || CONFLICTS_IGNORE.equals(conflictMode)) {
+			return;
+		}
+
+		for (String conflict : conflicts) {
+			log.warn(conflict);
+		}
+		if (CONFLICTS_FAIL.equals(conflictMode)) {
+			throw new MojoFailureException("Found " + conflicts.size() + " metadata reference conflicts");
+		}
+	}
+
+	/**
+	 * Parses each reference file into its own configuration using the given number of worker threads. Each worker has
+	 * its own parser.
+	 * @param configFiles the reference files
+	 * @param metrics the build metrics
+	 * @param threads the number of worker threads
+	 * @param counts filled with the number of references parsed from each file, including repeated keys
+	 * @return the configurations, in the same order as the files
+	 * @throws MojoFailureException if a file can't be loaded, reporting the first such file
+	 */
+	protected static MetadataConfig[] parseFiles(final List<File> configFiles, final BuildMetrics metrics, int threads, final int[] counts) throws MojoFailureException {
+		final MetadataConfig[] results = new MetadataConfig[configFiles.size()];
+		final Exception[] errors = new Exception[configFiles.size()];
+		final AtomicInteger nextIndex = new AtomicInteger();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> workers = new ArrayList<Future<Void>>();
+
+			for (int t = 0; t < threads; t++) {
+				workers.add(executor.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						MetadataRefsParser parser = new MetadataRefsParser();
+
+						int index;
+						while ((index = nextIndex.getAndIncrement()) < configFiles.size()) {
+							File configFile = configFiles.get(index);
+							MetadataConfig fileConfig = new MetadataConfig();
+							try {
+								long start = metrics.start();
+								counts[index] = parser.parse(configFile, fileConfig);
+								metrics.addPhaseTime("parse", start);
+								metrics.addFile(configFile.getPath(), configFile.length(), start);
+								results[index] = fileConfig;
+							}
+							catch (Exception ex) {
+								errors[index] = ex;
+							}
+						}
+						return null;
+					}
+				}));
 			}
-			catch (Exception ex) {
-				throw new MojoFailureException("Unable to load " + configFile.getPath(), ex);
+
+			for (Future<Void> worker : workers) {
+				worker.get();
 			}
 		}
+		catch (ExecutionException ex) {
+			throw new MojoFailureException("Unexpected error", ex.getCause());
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new MojoFailureException("Interrupted whilst loading metadata references", ex);
+		}
+		finally {
+			executor.shutdownNow();
+		}
 
-		return config;
+		for (int f = 0; f < errors.length; f++) {
+			if (errors[f] != null) {
+				throw new MojoFailureException("Unable to load " + configFiles.get(f).getPath(), errors[f]);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Adds the references loaded from one file to the configuration, recording any conflicts
+	 * @param config the configuration
+	 * @param fileConfig the references loaded from the last file in fileConfigs
+	 * @param configFiles the reference files
+	 * @param fileConfigs the references loaded from each file so far
+	 * @param conflicts the conflict descriptions
+	 */
+	protected static void addReferencesAndCheck(MetadataConfig config, MetadataConfig fileConfig, List<File> configFiles, List<MetadataConfig> fileConfigs, List<String> conflicts) {
+		String path = configFiles.get(fileConfigs.size() - 1).getPath();
+
+		for (String type : fileConfig.getConfiguredTypes()) {
+			for (Map.Entry<String, String> reference : fileConfig.getReferencesByType(type).entrySet()) {
+				String key = reference.getKey(), uuid = reference.getValue();
+				Map<String, String> existing = config.getReferencesByType(type);
+				String existingUuid = existing != null ? existing.get(key) : null;
+
+				if (!uuid.equals(existingUuid)) {
+					if (existingUuid != null) {
+						MetadataConfig.Reference previous = new MetadataConfig.Reference(type, key, existingUuid);
+						conflicts.add(previous + " is defined as " + existingUuid + " in " + findSource(previous, configFiles, fileConfigs)
+								+ " and as " + uuid + " in " + path);
+					}
+
+					MetadataConfig.Reference owner = config.findReference(uuid);
+					if (owner != null) {
+						conflicts.add("UUID " + uuid + " of " + type + "." + key + " in " + path + " is already used by "
+								+ owner + " in " + findSource(owner, configFiles, fileConfigs));
+					}
+				}
+
+				config.addReference(type, key, uuid);
+			}
+		}
+	}
+
+	/**
+	 * Finds the first reference file which contains the given reference. This is only needed to describe conflicts so
+	 * sources aren't stored for every reference.
+	 * @param reference the reference
+	 * @param configFiles the reference files
+	 * @param fileConfigs the references loaded from each file so far
+	 * @return the file path
+	 */
+	private static String findSource(MetadataConfig.Reference reference, List<File> configFiles, List<MetadataConfig> fileConfigs) {
+		for (int f = 0; f < fileConfigs.size(); f++) {
+			Map<String, String> references = fileConfigs.get(f).getReferencesByType(reference.getType());
+			if (references != null && reference.getUuid().equals(references.get(reference.getKey()))) {
+				return configFiles.get(f).getPath();
+			}
+		}
+		return "?";
 	}
 
 	/**
-	 * Generates the metadata source file
+	 * Generates the metadata source file, and shard source files for any types with more than the maximum number of
+	 * references per class
 	 * @param config the metadata configuration
 	 * @param directory the output directory
 	 * @param pkgName the output package name
+	 * @param maxReferencesPerClass the maximum number of references per class (0 means no limit)
 	 */
-	protected void generateMetadataSource(MetadataConfig config, File directory, String pkgName) throws IOException {
+	protected void generateMetadataSource(final MetadataConfig config, File directory, String pkgName, final int maxReferencesPerClass) throws IOException {
+		File packageDirectory = new File(directory, pkgName.replace(".", File.separator));
+
+		// Make sub-folders if necessary
+		if (!packageDirectory.exists()) {
+			packageDirectory.mkdirs();
+		}
+
 		// Load template for M.java
-		String template = IOUtils.toString(getClass().getClassLoader().getResourceAsStream(GEN_SOURCE_NAME + ".template"));
-		template = template.replace("{PACKAGE}", pkgName);
+		final SourceTemplate template = getTemplate(GEN_SOURCE_NAME + ".template");
+		final Map<String, Object> values = new HashMap<String, Object>();
+		values.put("PACKAGE", pkgName);
+		values.put("REFERENCES", new SourceTemplate.Section() {
+			public void render(Appendable out) throws IOException {
+				renderReferencesAsClasses(out, config, maxReferencesPerClass);
+			}
+		});
 
-		StringBuilder sb = new StringBuilder();
-		renderReferencesAsClasses(sb, config);
-		template = template.replace("{REFERENCES}", sb.toString());
+		writeOutput(new File(packageDirectory, GEN_SOURCE_NAME), new OutputRenderer() {
+			public void render(Writer writer) throws IOException {
+				template.render(writer, values);
+			}
+		});
 
-		String outputPath = directory.getPath() + File.separator + pkgName.replace(".", File.separator) + File.separator + GEN_SOURCE_NAME;
-		File outputFile = new File(outputPath);
+		Set<File> shardFiles = new HashSet<File>();
+		if (maxReferencesPerClass > 0) {
+			final SourceTemplate shardTemplate = getTemplate(GEN_SHARD_TEMPLATE);
 
-		// Make sub-folders if necessary
-		if (!outputFile.getParentFile().exists()) {
-			outputFile.getParentFile().mkdirs();
-		}
+			for (String type : config.getConfiguredTypes()) {
+				Map<String, String> references = config.getReferencesByType(type);
+				if (references.size() <= maxReferencesPerClass) {
+					continue;
+				}
 
-		FileWriter writer = new FileWriter(outputFile);
-		IOUtils.write(template, writer);
-		writer.close();
+				final Iterator<Map.Entry<String, String>> entries = references.entrySet().iterator();
+				values.put("REFERENCES", new SourceTemplate.Section() {
+					public void render(Appendable out) throws IOException {
+						for (int r = 0; r < maxReferencesPerClass && entries.hasNext(); r++) {
+							Map.Entry<String, String> entry = entries.next();
+							renderReferenceAsConstant(out, entry.getKey(), entry.getValue());
+						}
+					}
+				});
+
+				for (int shard = 1; entries.hasNext(); shard++) {
+					String shardName = getShardName(type, shard);
+					File shardFile = new File(packageDirectory, shardName + ".java");
+					shardFiles.add(shardFile.getCanonicalFile());
+					values.put("SHARD", shardName);
+
+					writeOutput(shardFile, new OutputRenderer() {
+						public void render(Writer writer) throws IOException {
+							shardTemplate.render(writer, values);
+						}
+					});
+				}
+			}
+		}
 
-		getLog().info("Generated " + outputFile.getPath());
+		deleteStaleShards(shardFiles);
 	}
 
 	/**
-	 * Generates the metadata filter file
-	 * @param config the metadata configuration
-	 * @param file the output filter file
+	 * Deletes shard source files generated by the last execution, or by an earlier generation of this instance, which
+	 * weren't generated again. Only files known to have been generated by this goal are deleted, as other goals and
+	 * executions may write to the same package.
+	 * @param shardFiles the canonical shard source files generated this time
 	 */
-	protected void generateMetadataFilter(MetadataConfig config, File file) throws IOException {
-		FileWriter writer = new FileWriter(file);
+	protected void deleteStaleShards(Set<File> shardFiles) throws IOException {
+		Set<File> candidates = new HashSet<File>(generatedShardFiles);
+		for (File output : getPreviousOutputs()) {
+			if (output.getName().startsWith(GEN_SHARD_PREFIX) && output.getName().endsWith(".java")) {
+				candidates.add(output.getCanonicalFile());
+			}
+		}
 
-		for (Map.Entry<Object, Object> property : config.toProperties("metadata.").entrySet()) {
-			writer.write(property.getKey() + "=" + property.getValue() + "\n");
+		for (File file : candidates) {
+			if (!shardFiles.contains(file) && file.delete()) {
+				getLog().info("Deleted stale " + file.getPath());
+			}
 		}
 
-		writer.close();
+		generatedShardFiles.clear();
+		generatedShardFiles.addAll(shardFiles);
+	}
 
-		getLog().info("Generated " + file.getPath());
+	/**
+	 * Gets the name of a generated shard interface
+	 * @param type the type name
+	 * @param shard the shard number (starting at 1)
+	 * @return the interface name
+	 */
+	protected static String getShardName(String type, int shard) {
+		return GEN_SHARD_PREFIX + type + "_" + shard;
+	}
+
+	/**
+	 * Generates the metadata filter file, with the same properties as {@link MetadataConfig#toProperties(String)} but
+	 * ordered by type and then by the order the references were added
+	 * @param config the metadata configuration
+	 * @param file the output filter file
+	 */
+	protected void generateMetadataFilter(final MetadataConfig config, File file) throws IOException {
+		writeOutput(file, new OutputRenderer() {
+			public void render(Writer writer) throws IOException {
+				for (String type : config.getConfiguredTypes()) {
+					String propertyPrefix = "metadata." + type.toLowerCase() + ".";
+
+					for (Map.Entry<String, String> reference : config.getReferencesByType(type).entrySet()) {
+						writer.append(propertyPrefix).append(reference.getKey()).append("=").append(reference.getValue()).append("\n");
+					}
+				}
+			}
+		});
 	}
 
 	/**
 	 * Renders metadata references as constant classes organized by type
-	 * @param sb the string builder
+	 * @param sb the output
 	 * @param config the metadata configuration
-	 * @return the code
+	 * @param maxReferencesPerClass the maximum number of references per class (0 means no limit)
 	 */
-	protected void renderReferencesAsClasses(StringBuilder sb, MetadataConfig config) {
+	protected void renderReferencesAsClasses(Appendable sb, MetadataConfig config, int maxReferencesPerClass) throws IOException {
 		for (String type : config.getConfiguredTypes()) {
-			renderTypeReferencesAsClass(sb, type, config.getReferencesByType(type));
+			renderTypeReferencesAsClass(sb, type, config.getReferencesByType(type), maxReferencesPerClass);
 		}
 	}
 
 	/**
-	 * Renders all references for the given type as class of constants
-	 * @param sb the string builder
+	 * Renders all references for the given type as class of constants. If there are more references than the maximum
+	 * per class, the class instead implements the shard interfaces which declare those constants, so they can still be
+	 * accessed as Metadata.Type.KEY.
+	 * @param sb the output
 	 * @param type the type name
 	 * @param references the type reference map
+	 * @param maxReferencesPerClass the maximum number of references per class (0 means no limit)
 	 */
-	protected void renderTypeReferencesAsClass(StringBuilder sb, String type, Map<String, String> references) {
+	protected void renderTypeReferencesAsClass(Appendable sb, String type, Map<String, String> references, int maxReferencesPerClass) throws IOException {
 		sb.append("\n\tpublic static class ");
 		sb.append(type);
-		sb.append(" {\n");
 
-		for (Map.Entry<String, String> entry : references.entrySet()) {
-			renderReferenceAsConstant(sb, entry.getKey(), entry.getValue());
+		if (maxReferencesPerClass > 0 && references.size() > maxReferencesPerClass) {
+			int shards = (references.size() + maxReferencesPerClass - 1) / maxReferencesPerClass;
+			sb.append(" implements ");
+			for (int shard = 1; shard <= shards; shard++) {
+				sb.append(shard == 1 ? "" : ", ").append(getShardName(type, shard));
+			}
+			sb.append(" {\n");
+		}
+		else {
+			sb.append(" {\n");
+
+			for (Map.Entry<String, String> entry : references.entrySet()) {
+				renderReferenceAsConstant(sb, entry.getKey(), entry.getValue());
+			}
 		}
 
 		sb.append("\t}\n");
@@ -202,15 +562,39 @@ public class GenerateMetadataSourcesMojo extends AbstractMojo {
 
 	/**
 	 * Renders a single reference as a constant
-	 * @param sb the string builder
+	 * @param sb the output
 	 * @param key the reference key
 	 * @param uuid the reference UUID
 	 */
-	protected void renderReferenceAsConstant(StringBuilder sb, String key, String uuid) {
+	protected void renderReferenceAsConstant(Appendable sb, String key, String uuid) throws IOException {
 		sb.append("\t\tpublic static final String ");
 		sb.append(key);
 		sb.append(" = \"");
 		sb.append(uuid);
 		sb.append("\";\n");
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Metadata references loaded from a set of reference files, along with any conflicts between them. This is what's
+	 * shared between the goal executions of a build.
+	 */
+	protected static class LoadedReferences {
+
+		private final MetadataConfig config;
+
+		private final List<String> conflicts;
+
+		public LoadedReferences(MetadataConfig config, List<String> conflicts) {
+			this.config = config;
+			this.conflicts = conflicts;
+		}
+
+		public MetadataConfig getConfig() {
+			return config;
+		}
+
+		public List<String> getConflicts() {
+			return conflicts;
+		}
+	}
+}
@@ -15,36 +15,53 @@
 package org.openmrs.maven.plugins.distrotools.mojo;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
-
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.StringUtils;
+import org.openmrs.maven.plugins.distrotools.FormReferenceChecker;
+import org.openmrs.maven.plugins.distrotools.MetadataConfig;
+import org.openmrs.maven.plugins.distrotools.util.BuildMetrics;
+import org.openmrs.maven.plugins.distrotools.util.CharSequenceReader;
 import org.openmrs.maven.plugins.distrotools.util.FileUtils;
+import org.openmrs.maven.plugins.distrotools.util.FormReader;
+import org.openmrs.maven.plugins.distrotools.util.InputFingerprint;
+import org.openmrs.maven.plugins.distrotools.util.MacroEngine;
+import org.openmrs.maven.plugins.distrotools.util.ValidationCache;
 import org.openmrs.maven.plugins.distrotools.util.XmlUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.DocumentBuilder;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Properties;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Goal which validates HFE form files
  */
 @Mojo(name = "validate-forms", defaultPhase = LifecyclePhase.VALIDATE)
-public class ValidateFormsMojo extends AbstractMojo {
+public class ValidateFormsMojo extends AbstractDistroToolsMojo {
 
 	// Directory of form files
 	@Parameter(property = "formsDirectory", required = true)
@@ -54,6 +71,25 @@ public class ValidateFormsMojo extends AbstractMojo {
 	@Parameter(property = "formsExtension", required = true, defaultValue = "html")
 	private String formsExtension;
 
+	// Number of threads used to validate forms (0 means one per available processor)
+	@Parameter(property = "validationThreads", defaultValue = "0")
+	private int validationThreads;
+
+	// Whether to skip forms which haven't changed since they were last validated
+	@Parameter(property = "validationCache", defaultValue = "true")
+	private boolean validationCache;
+
+	// File in which validation results are cached between builds
+	@Parameter(property = "validationCacheFile", required = true, defaultValue = "${project.build.directory}/distrotools/validate-forms.cache")
+	private File validationCacheFile;
+
+	// Directory of metadata reference files against which concept and encounter type references are checked (optional)
+	@Parameter(property = "metadataDirectory")
+	private File metadataDirectory;
+
+	// Schema against which forms are validated
+	static final String FORM_SCHEMA = "htmlform.xsd";
+
 	/**
 	 * Executes the validate goal
 	 * @throws MojoExecutionException if an error occurs
@@ -62,25 +98,253 @@ public class ValidateFormsMojo extends AbstractMojo {
 		if (!formsDirectory.exists() || !formsDirectory.isDirectory()) {
 			throw new MojoFailureException("Forms directory " + formsDirectory + " doesn't exist or is not a directory");
 		}
+		if (metadataDirectory != null && (!metadataDirectory.exists() || !metadataDirectory.isDirectory())) {
+			throw new MojoFailureException("Metadata configuration directory " + metadataDirectory + " doesn't exist or is not a directory");
+		}
 
-		List<File> formfiles = FileUtils.getFilesInDirectory(formsDirectory, formsExtension);
-
-		getLog().info("Found " + formfiles.size() + " form files");
+		startMetrics("validate-forms");
+		try {
+			validateForms();
+		}
+		finally {
+			finishMetrics();
+		}
+	}
 
+	/**
+	 * Validates all form files in the forms directory
+	 */
+	protected void validateForms() throws MojoExecutionException, MojoFailureException {
+		long start = getMetrics().start();
+		List<File> formfiles;
 		try {
-			// Instantiate some required DOM tools
-			DocumentBuilder documentBuilder = XmlUtils.createBuilder("htmlform.xsd");
-			Transformer documentTransformer = XmlUtils.createTransformer();
+			// Files are sorted so that failures are always reported in the same order
+			formfiles = scanFiles(formsDirectory, formsExtension);
+		}
+		catch (IOException ex) {
+			throw new MojoExecutionException("Unable to scan " + formsDirectory.getPath(), ex);
+		}
+		getMetrics().addPhaseTime("discovery", start);
 
-			for (File formFile : formfiles) {
-				validateFormFile(formFile, documentBuilder, documentTransformer);
+		int threads = validationThreads > 0 ? validationThreads : Runtime.getRuntime().availableProcessors();
+		threads = Math.max(1, Math.min(threads, formfiles.size()));
+
+		getLog().info("Found " + formfiles.size() + " form files (validating with " + threads + " threads)");
+
+		List<File> configFiles = null;
+		MetadataConfig config = null;
+		if (metadataDirectory != null) {
+			configFiles = scanMetadataFiles();
+			config = loadMetadata(configFiles);
+		}
+
+		ValidationCache cache = validationCache ? loadCache(configFiles) : null;
+
+		List<MojoFailureException> failures = validateFormFiles(formfiles, threads, config, cache);
+
+		if (cache != null) {
+			try {
+				cache.save(validationCacheFile);
 			}
+			catch (IOException ex) {
+				getLog().warn("Unable to save validation cache " + validationCacheFile.getPath(), ex);
+			}
+		}
+
+		if (!failures.isEmpty()) {
+			for (MojoFailureException failure : failures) {
+				getLog().error(describeFailure(failure));
+			}
+			throw new MojoFailureException(failures.size() + " of " + formfiles.size() + " form files failed validation");
+		}
+	}
+
+	/**
+	 * Scans the metadata directory for reference files
+	 * @return the reference files
+	 */
+	protected List<File> scanMetadataFiles() throws MojoExecutionException {
+		try {
+			// The includes and excludes of this goal are for form files
+			return FileUtils.getFilesInDirectory(metadataDirectory, "xml");
+		}
+		catch (IOException ex) {
+			throw new MojoExecutionException("Unable to scan " + metadataDirectory.getPath(), ex);
+		}
+	}
+
+	/**
+	 * Loads the metadata references against which forms are checked. These are shared with any other goal of this
+	 * build which has loaded the same files.
+	 * @param configFiles the reference files
+	 * @return the metadata configuration
+	 */
+	protected MetadataConfig loadMetadata(final List<File> configFiles) throws MojoExecutionException, MojoFailureException {
+		long start = getMetrics().start();
+		try {
+			String cacheKey = GenerateMetadataSourcesMojo.getCacheKey(configFiles);
+			MetadataConfig config = getShared(cacheKey, "metadata references", new Callable<GenerateMetadataSourcesMojo.LoadedReferences>() {
+				public GenerateMetadataSourcesMojo.LoadedReferences call() throws Exception {
+					return GenerateMetadataSourcesMojo.loadReferences(configFiles, getLog(), getMetrics(), true, 0);
+				}
+			}).getConfig();
+			getLog().info("Checking form references against " + config.getReferenceCount() + " metadata references");
+			return config;
 		}
 		catch (MojoFailureException ex) {
 			throw ex;
 		}
 		catch (Exception ex) {
-			throw new MojoExecutionException("Unexpected error", ex);
+			throw new MojoExecutionException("Unable to load metadata references", ex);
+		}
+		finally {
+			getMetrics().addPhaseTime("metadata", start);
+		}
+	}
+
+	/**
+	 * Loads the validation cache. The cache version is derived from the form schema, the plugin code version and any
+	 * metadata reference files so that changing any of them invalidates all cached results.
+	 * @param configFiles the metadata reference files (may be null)
+	 * @return the cache or null if the plugin code version can't be determined
+	 */
+	protected ValidationCache loadCache(List<File> configFiles) throws MojoExecutionException {
+		InputStream schema = getClass().getClassLoader().getResourceAsStream(FORM_SCHEMA);
+		try {
+			String pluginVersion = getPluginCodeVersion();
+			if (pluginVersion == null) {
+				getLog().info("Not using the validation cache as this snapshot of the plugin wasn't loaded from a jar");
+				return null;
+			}
+
+			String version = FileUtils.digest(schema) + "/" + pluginVersion;
+			if (configFiles != null) {
+				version += "/" + new InputFingerprint().addFiles(metadataDirectory, configFiles, getSessionCache().getFileHashes()).getDigest();
+			}
+			return ValidationCache.load(validationCacheFile, version);
+		}
+		catch (IOException ex) {
+			throw new MojoExecutionException("Unable to load validation cache " + validationCacheFile.getPath(), ex);
+		}
+		finally {
+			IOUtils.closeQuietly(schema);
+		}
+	}
+
+	/**
+	 * Validates the given form files using the given number of worker threads. Each worker has its own DOM tools, form
+	 * reader and reference checker.
+	 * @param formFiles the form files
+	 * @param threads the number of worker threads
+	 * @param config the metadata configuration against which references are checked (may be null)
+	 * @param cache the validation cache (may be null)
+	 * @return the validation failures, in the same order as the form files
+	 * @throws MojoExecutionException if an unexpected error occurs
+	 */
+	protected List<MojoFailureException> validateFormFiles(final List<File> formFiles, int threads, final MetadataConfig config, final ValidationCache cache) throws MojoExecutionException {
+		final MojoFailureException[] results = new MojoFailureException[formFiles.size()];
+		final AtomicInteger nextIndex = new AtomicInteger();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> workers = new ArrayList<Future<Void>>();
+
+			for (int t = 0; t < threads; t++) {
+				workers.add(executor.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						// Get this worker's DOM tools
+						DocumentBuilder documentBuilder = XmlUtils.getBuilder(FORM_SCHEMA);
+						Transformer documentTransformer = XmlUtils.getTransformer();
+						FormReader formReader = new FormReader();
+						FormReferenceChecker referenceChecker = config != null ? new FormReferenceChecker(config) : null;
+
+						int index;
+						while ((index = nextIndex.getAndIncrement()) < formFiles.size()) {
+							try {
+								validateFormFile(formFiles.get(index), documentBuilder, documentTransformer, formReader, referenceChecker, cache);
+							}
+							catch (MojoFailureException ex) {
+								results[index] = ex;
+							}
+						}
+						return null;
+					}
+				}));
+			}
+
+			for (Future<Void> worker : workers) {
+				worker.get();
+			}
+		}
+		catch (ExecutionException ex) {
+			throw new MojoExecutionException("Unexpected error", ex.getCause());
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted whilst validating forms", ex);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		List<MojoFailureException> failures = new ArrayList<MojoFailureException>();
+		for (MojoFailureException result : results) {
+			if (result != null) {
+				failures.add(result);
+			}
+		}
+		return failures;
+	}
+
+	/**
+	 * Validates the given form file unless the cache holds a result for its current content
+	 * @param formFile the form file
+	 * @param documentBuilder the DOM document builder
+	 * @param documentTransformer the DOM document transformer
+	 * @param formReader the form reader
+	 * @param referenceChecker the metadata reference checker (may be null)
+	 * @param cache the validation cache (may be null)
+	 */
+	protected void validateFormFile(File formFile, DocumentBuilder documentBuilder, Transformer documentTransformer, FormReader formReader, FormReferenceChecker referenceChecker, ValidationCache cache) throws MojoFailureException {
+		BuildMetrics metrics = getMetrics();
+		long fileStart = metrics.start();
+		try {
+			if (cache == null) {
+				validateFormFile(formFile, documentBuilder, documentTransformer, formReader, referenceChecker);
+				return;
+			}
+
+			String path = formFile.getAbsolutePath();
+			String hash;
+			try {
+				long start = metrics.start();
+				hash = getSessionCache().getFileHashes().getHash(formFile);
+				metrics.addPhaseTime("hash", start);
+			}
+			catch (IOException ex) {
+				throw new MojoFailureException("Unable to load " + formFile.getPath(), ex);
+			}
+
+			ValidationCache.Entry cached = cache.lookup(path, hash);
+			if (cached != null) {
+				if (!cached.isValid()) {
+					throw new MojoFailureException(cached.getError());
+				}
+				getLog().debug("Skipped unchanged form file " + formFile.getPath());
+				return;
+			}
+
+			try {
+				validateFormFile(formFile, documentBuilder, documentTransformer, formReader, referenceChecker);
+				cache.put(path, hash, null);
+			}
+			catch (MojoFailureException ex) {
+				cache.put(path, hash, describeFailure(ex));
+				throw ex;
+			}
+		}
+		finally {
+			metrics.addFile(formFile.getPath(), formFile.length(), fileStart);
 		}
 	}
 
@@ -91,19 +355,49 @@ public class ValidateFormsMojo extends AbstractMojo {
 	 * @param documentTransformer the DOM document transformer
 	 */
 	protected void validateFormFile(File formFile, DocumentBuilder documentBuilder, Transformer documentTransformer) throws MojoFailureException {
+		validateFormFile(formFile, documentBuilder, documentTransformer, new FormReader(), null);
+	}
+
+	/**
+	 * Validates the given form file, and checks its metadata references if there is a reference checker. The form is
+	 * read once into the form reader's buffers, which every stage then works from.
+	 * @param formFile the form file
+	 * @param documentBuilder the DOM document builder
+	 * @param documentTransformer the DOM document transformer
+	 * @param formReader the form reader
+	 * @param referenceChecker the metadata reference checker (may be null)
+	 */
+	protected void validateFormFile(File formFile, DocumentBuilder documentBuilder, Transformer documentTransformer, FormReader formReader, FormReferenceChecker referenceChecker) throws MojoFailureException {
+		BuildMetrics metrics = getMetrics();
 		try {
-			String xml = IOUtils.toString(new FileReader(formFile));
+			long start = metrics.start();
+			CharBuffer content = formReader.read(formFile);
+			StringBuilder xml = formReader.stripComments(content);
+			metrics.addPhaseTime("read", start);
 
-			// Validate basic structure
+			// Validate basic structure. This is the only time the form is parsed.
+			start = metrics.start();
 			Document form = XmlUtils.stringToDocument(xml, documentBuilder);
-			xml = stripComments(xml);
+			metrics.addPhaseTime("validate", start);
 
 			try {
-				xml = applyMacros(xml, documentBuilder, documentTransformer);
+				start = metrics.start();
+				Set<String> undefined = new TreeSet<String>();
+				applyMacros(form, xml, documentTransformer, undefined);
+				metrics.addPhaseTime("macros", start);
+
+				if (!undefined.isEmpty()) {
+					getLog().warn("Undefined macros referenced in " + formFile.getPath() + ": $" + StringUtils.join(undefined.iterator(), ", $"));
+				}
 			}
 			catch (Exception ex) {
 				throw new MojoFailureException("Unable to apply macros in " + formFile.getPath(), ex);
 			}
+
+			if (referenceChecker != null) {
+				// Checked against the content with comments, so that line numbers match the file
+				checkReferences(formFile, content, referenceChecker);
+			}
 		}
 		catch (IOException ex) {
 			throw new MojoFailureException("Unable to load " + formFile.getPath(), ex);
@@ -115,28 +409,73 @@ public class ValidateFormsMojo extends AbstractMojo {
 		getLog().info("Validated form file " + formFile.getPath());
 	}
 
+	/**
+	 * Checks the metadata references in the given form file
+	 * @param formFile the form file
+	 * @param content the form file content
+	 * @param referenceChecker the reference checker
+	 */
+	protected void checkReferences(File formFile, CharSequence content, FormReferenceChecker referenceChecker) throws MojoFailureException {
+		List<String> problems;
+		try {
+			long start = getMetrics().start();
+			problems = referenceChecker.check(new CharSequenceReader(content), formFile.getPath());
+			getMetrics().addPhaseTime("references", start);
+		}
+		catch (IOException ex) {
+			throw new MojoFailureException("Unable to load " + formFile.getPath(), ex);
+		}
+		catch (XMLStreamException ex) {
+			throw new MojoFailureException("Unable to parse " + formFile.getPath(), ex);
+		}
+
+		if (!problems.isEmpty()) {
+			StringBuilder message = new StringBuilder(problems.size() + " unknown metadata references in " + formFile.getPath());
+			for (String problem : problems) {
+				message.append("\n  ").append(problem);
+			}
+			throw new MojoFailureException(message.toString());
+		}
+	}
+
+	/**
+	 * Describes a validation failure, including the message of its cause if there is one
+	 * @param failure the failure
+	 * @return the description
+	 */
+	protected static String describeFailure(MojoFailureException failure) {
+		return failure.getMessage() + (failure.getCause() != null ? ": " + failure.getCause().getMessage() : "");
+	}
+
 	/**
 	 * Strips comments from the given form XML
 	 * @param xml the form XML
 	 * @return the form XML with comments stripped
 	 */
 	public static String stripComments(String xml) {
-		String regex = "<!\\s*--.*?--\\s*>"; // this is the regEx for html comment tag <!-- .* -->
-		Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
-		Matcher matcher = pattern.matcher(xml);
-		xml = matcher.replaceAll("");
-		return xml;
+		return XmlUtils.stripComments(xml);
 	}
 
 	/**
-	 * Applies macros in the given form XML (if there are any)
-	 * @param xml the form XML
-	 * @param documentBuilder the DOM document builder
+	 * Applies macros in the given form (if there are any)
+	 * @param form the parsed form document (modified if it has macros)
+	 * @param xml the form XML from which the document was parsed
 	 * @param documentTransformer the DOM document transformer
 	 * @return the form XML with macros applied
 	 */
-	protected static String applyMacros(String xml, DocumentBuilder documentBuilder, Transformer documentTransformer) throws IOException, TransformerException, SAXException {
-		Document form = XmlUtils.stringToDocument(xml, documentBuilder);
+	protected static String applyMacros(Document form, String xml, Transformer documentTransformer) throws IOException, TransformerException {
+		return applyMacros(form, xml, documentTransformer, null).toString();
+	}
+
+	/**
+	 * Applies macros in the given form (if there are any)
+	 * @param form the parsed form document (modified if it has macros)
+	 * @param xml the form XML from which the document was parsed
+	 * @param documentTransformer the DOM document transformer
+	 * @param undefined the collection to add the names of probably misspelt macro references to (may be null)
+	 * @return the form XML with macros applied
+	 */
+	protected static CharSequence applyMacros(Document form, CharSequence xml, Transformer documentTransformer, Collection<String> undefined) throws IOException, TransformerException {
 		Node htmlformNode = XmlUtils.findFirstChild(form, "htmlform");
 		Node macrosNode = XmlUtils.findFirstChild(htmlformNode, "macros");
 
@@ -149,22 +488,15 @@ public class ValidateFormsMojo extends AbstractMojo {
 		Properties macros = new Properties();
 		String macrosText = macrosNode.getTextContent();
 		if (macrosText != null) {
-			macros.load(new ByteArrayInputStream(macrosText.getBytes()));
+			macros.load(new StringReader(macrosText));
 		}
 
 		// Remove the macros node
 		htmlformNode.removeChild(macrosNode);
 
 		// Switch back to string so we can use string utilities to substitute
-		xml = XmlUtils.documentToString(form, documentTransformer);
-
-		// substitute any macros we found
-		for (Object temp : macros.keySet()) {
-			String key = (String) temp;
-			String value = macros.getProperty(key, "");
-			xml = xml.replace("$" + key, value);
-		}
+		String serialized = XmlUtils.documentToString(form, documentTransformer);
 
-		return xml;
+		return new MacroEngine(macros).expand(serialized, undefined);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,489 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.mojo;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.openmrs.maven.plugins.distrotools.FormReferenceChecker;
+import org.openmrs.maven.plugins.distrotools.MetadataConfig;
+import org.openmrs.maven.plugins.distrotools.MetadataRefsParser;
+import org.openmrs.maven.plugins.distrotools.util.BuildMetrics;
+import org.openmrs.maven.plugins.distrotools.util.FileScanner;
+import org.openmrs.maven.plugins.distrotools.util.FormReader;
+import org.openmrs.maven.plugins.distrotools.util.XmlUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Goal which keeps running and re-validates forms and regenerates metadata and constants sources whenever their input
+ * files change. Compiled schemas, parsers and the parsed metadata and constants of each input file are kept in memory
+ * so only changed files are re-parsed.
+ */
+@Mojo(name = "watch")
+public class WatchMojo extends AbstractDistroToolsMojo {
+
+	// Directory of form files
+	@Parameter(property = "formsDirectory")
+	private File formsDirectory;
+
+	// File extension of form files
+	@Parameter(property = "formsExtension", required = true, defaultValue = "html")
+	private String formsExtension;
+
+	// Metadata configuration directory
+	@Parameter(property = "metadataDirectory", defaultValue = "src/main/distro/metadata")
+	private File metadataDirectory;
+
+	// Constants configuration directory
+	@Parameter(property = "constantsDirectory", defaultValue = "src/main/distro/constants")
+	private File constantsDirectory;
+
+	@Parameter(property = "outputDirectory", required = true, defaultValue = "${project.build.directory}/generated-sources/distro")
+	private File outputDirectory;
+
+	@Parameter(property = "outputPackage")
+	private String outputPackage;
+
+	@Parameter(property = "metadataFilterFile", required = true, defaultValue = "${project.build.directory}/metadata.properties")
+	private File metadataFilterFile;
+
+	@Parameter(property = "constantsFilterFile", required = true, defaultValue = "${project.build.directory}/constants.properties")
+	private File constantsFilterFile;
+
+	// Maximum number of references in a single generated metadata class (0 means no limit)
+	@Parameter(property = "maxReferencesPerClass", defaultValue = "0")
+	private int maxReferencesPerClass;
+
+	// Whether to generate int, long, double and boolean constants and arrays from JSON numbers and booleans
+	@Parameter(property = "typedConstants", defaultValue = "false")
+	private boolean typedConstants;
+
+	// Directory of project templates which override the templates provided by this plugin
+	@Parameter(property = "templateDirectory", defaultValue = "src/main/distro/templates")
+	private File templateDirectory;
+
+	// How long to wait for further changes before processing a batch of changes
+	private static final long DEBOUNCE_MILLIS = 100;
+
+	private ValidateFormsMojo formsValidator;
+
+	private GenerateMetadataSourcesMojo metadataGenerator;
+
+	private GenerateConstantsMojo constantsGenerator;
+
+	private MetadataRefsParser refsParser;
+
+	private FormReader formReader;
+
+	// Checks form references against the references of all reference files (null until they have been loaded)
+	private FormReferenceChecker referenceChecker;
+
+	private FileScanner formsScanner;
+
+	private FileScanner metadataScanner;
+
+	private FileScanner constantsScanner;
+
+	private final Map<File, MetadataConfig> metadataByFile = new TreeMap<File, MetadataConfig>();
+
+	private final Map<File, List<GenerateConstantsMojo.ConstantClass>> constantsByFile = new TreeMap<File, List<GenerateConstantsMojo.ConstantClass>>();
+
+	private final Map<WatchKey, Path> watchedDirectories = new HashMap<WatchKey, Path>();
+
+	/**
+	 * Executes the watch goal. Only returns if the thread is interrupted.
+	 * @throws MojoExecutionException if an error occurs
+	 */
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		boolean watchForms = isDirectory(formsDirectory);
+		boolean watchMetadata = isDirectory(metadataDirectory);
+		boolean watchConstants = isDirectory(constantsDirectory);
+
+		if (!watchForms && !watchMetadata && !watchConstants) {
+			throw new MojoFailureException("None of the forms, metadata or constants directories exist");
+		}
+		if ((watchMetadata || watchConstants) && outputPackage == null) {
+			throw new MojoFailureException("Parameter outputPackage is required to generate metadata and constants sources");
+		}
+
+		initialize();
+
+		WatchService watcher = null;
+		try {
+			watcher = FileSystems.getDefault().newWatchService();
+
+			// Process everything once and then start watching
+			Set<Path> all = new TreeSet<Path>();
+			if (watchForms) {
+				addFiles(all, formsScanner.scan(formsDirectory));
+				registerRecursive(watcher, formsDirectory.toPath());
+			}
+			if (watchMetadata) {
+				addFiles(all, metadataScanner.scan(metadataDirectory));
+				registerRecursive(watcher, metadataDirectory.toPath());
+			}
+			if (watchConstants) {
+				addFiles(all, constantsScanner.scan(constantsDirectory));
+				registerRecursive(watcher, constantsDirectory.toPath());
+			}
+			if ((watchMetadata || watchConstants) && isDirectory(templateDirectory)) {
+				registerRecursive(watcher, templateDirectory.toPath());
+			}
+			processChanges(all, watchMetadata, watchConstants);
+
+			getLog().info("Watching for changes. Press Ctrl+C to stop.");
+
+			while (!Thread.currentThread().isInterrupted()) {
+				Set<Path> changed = new TreeSet<Path>();
+				boolean overflowed = false;
+
+				// Collect events until there's a short pause, as editors often save a file in several steps
+				WatchKey key = watcher.take();
+				do {
+					overflowed |= collectChanges(watcher, key, changed);
+					resetKey(key);
+				}
+				while ((key = watcher.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+
+				if (overflowed) {
+					getLog().warn("Too many changes to track individually, reprocessing everything");
+					changed.clear();
+					if (watchForms) {
+						addFiles(changed, formsScanner.scan(formsDirectory));
+					}
+					if (watchMetadata) {
+						addFiles(changed, metadataScanner.scan(metadataDirectory));
+					}
+					if (watchConstants) {
+						addFiles(changed, constantsScanner.scan(constantsDirectory));
+					}
+					metadataByFile.clear();
+					constantsByFile.clear();
+					processChanges(changed, watchMetadata, watchConstants);
+				}
+				else if (!changed.isEmpty()) {
+					processChanges(changed, false, false);
+				}
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		catch (IOException ex) {
+			throw new MojoExecutionException("Unable to watch for changes", ex);
+		}
+		finally {
+			if (watcher != null) {
+				try {
+					watcher.close();
+				}
+				catch (IOException ex) {
+					getLog().warn("Unable to close watch service", ex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates the validator, generators, parser and file scanners which are reused for the whole session
+	 */
+	protected void initialize() {
+		formsValidator = new ValidateFormsMojo();
+		formsValidator.setLog(getLog());
+		metadataGenerator = new GenerateMetadataSourcesMojo();
+		metadataGenerator.setLog(getLog());
+		metadataGenerator.setTemplateDirectory(templateDirectory);
+		constantsGenerator = new GenerateConstantsMojo();
+		constantsGenerator.setLog(getLog());
+		constantsGenerator.setTemplateDirectory(templateDirectory);
+		constantsGenerator.setTypedConstants(typedConstants);
+		refsParser = new MetadataRefsParser();
+		formReader = new FormReader();
+		referenceChecker = null;
+
+		formsScanner = createScanner(formsExtension);
+		metadataScanner = createScanner("xml");
+		constantsScanner = createScanner("json");
+	}
+
+	/**
+	 * Processes a set of changed files, only regenerating outputs whose inputs or templates changed. Forms are validated
+	 * after the metadata references have been reloaded, and all forms are re-validated if the references changed, as
+	 * that can change whether their references are valid.
+	 * @param changed the changed files (may include deleted files)
+	 * @param forceMetadata whether to regenerate metadata sources even if no reference files changed
+	 * @param forceConstants whether to regenerate constants sources even if no constants files changed
+	 */
+	protected void processChanges(Set<Path> changed, boolean forceMetadata, boolean forceConstants) {
+		long start = System.nanoTime();
+		boolean metadataChanged = forceMetadata;
+		boolean constantsChanged = forceConstants;
+		Set<File> forms = new TreeSet<File>();
+
+		for (Path path : changed) {
+			File file = path.toFile();
+			boolean exists = file.isFile();
+
+			if (isInput(file, formsDirectory, formsScanner)) {
+				if (exists) {
+					forms.add(file);
+				}
+			}
+			else if (isInput(file, metadataDirectory, metadataScanner)) {
+				metadataByFile.remove(file);
+				if (exists) {
+					loadMetadata(file);
+				}
+				metadataChanged = true;
+			}
+			else if (isInput(file, constantsDirectory, constantsScanner)) {
+				constantsByFile.remove(file);
+				if (exists) {
+					loadConstants(file);
+				}
+				constantsChanged = true;
+			}
+			else if (isDirectory(templateDirectory) && path.startsWith(templateDirectory.toPath())) {
+				// The generators reload templates whose override files have changed
+				metadataChanged |= isDirectory(metadataDirectory);
+				constantsChanged |= isDirectory(constantsDirectory);
+			}
+		}
+
+		if (metadataChanged) {
+			generateMetadata();
+			if (isDirectory(formsDirectory)) {
+				try {
+					forms.addAll(formsScanner.scan(formsDirectory));
+				}
+				catch (IOException ex) {
+					getLog().error("Unable to scan " + formsDirectory.getPath(), ex);
+				}
+			}
+		}
+		if (constantsChanged) {
+			generateConstants();
+		}
+		for (File form : forms) {
+			validateForm(form);
+		}
+
+		getLog().info("Processed " + changed.size() + " changed files in " + (System.nanoTime() - start) / 1000000 + " ms");
+	}
+
+	/**
+	 * Validates a single form, checking its references against the metadata references if they have been loaded
+	 * @param file the form file
+	 */
+	protected void validateForm(File file) {
+		try {
+			formsValidator.validateFormFile(file, XmlUtils.getBuilder(ValidateFormsMojo.FORM_SCHEMA), XmlUtils.getTransformer(), formReader, referenceChecker);
+		}
+		catch (MojoFailureException ex) {
+			getLog().error(ValidateFormsMojo.describeFailure(ex));
+		}
+		catch (Exception ex) {
+			getLog().error("Unable to validate " + file.getPath(), ex);
+		}
+	}
+
+	/**
+	 * Loads the references from a single reference file
+	 * @param file the reference file
+	 */
+	protected void loadMetadata(File file) {
+		try {
+			MetadataConfig config = new MetadataConfig();
+			int count = refsParser.parse(file, config);
+			metadataByFile.put(file, config);
+			getLog().info("Parsed " + count + " references from " + file.getPath());
+		}
+		catch (Exception ex) {
+			getLog().error("Unable to load " + file.getPath(), ex);
+		}
+	}
+
+	/**
+	 * Loads the constant classes from a single constants file
+	 * @param file the constants file
+	 */
+	protected void loadConstants(File file) {
+		try {
+			constantsByFile.put(file, GenerateConstantsMojo.loadFromFiles(Collections.singletonList(file), getLog(), new BuildMetrics("watch")));
+		}
+		catch (MojoFailureException ex) {
+			getLog().error("Unable to load " + file.getPath(), ex.getCause() != null ? ex.getCause() : ex);
+		}
+	}
+
+	/**
+	 * Regenerates the metadata sources from the references of all reference files, merged in file order
+	 */
+	protected void generateMetadata() {
+		MetadataConfig config = new MetadataConfig();
+		for (MetadataConfig fileConfig : metadataByFile.values()) {
+			config.addReferences(fileConfig);
+		}
+
+		referenceChecker = new FormReferenceChecker(config);
+
+		try {
+			metadataGenerator.resetOutputs();
+			metadataGenerator.generateMetadataSource(config, outputDirectory, outputPackage, maxReferencesPerClass);
+			metadataGenerator.generateMetadataFilter(config, metadataFilterFile);
+			metadataGenerator.logOutputSummary();
+		}
+		catch (IOException ex) {
+			getLog().error("Unable to generate metadata sources", ex);
+		}
+	}
+
+	/**
+	 * Regenerates the constants sources from the classes of all constants files, in file order
+	 */
+	protected void generateConstants() {
+		List<GenerateConstantsMojo.ConstantClass> constantClasses = new ArrayList<GenerateConstantsMojo.ConstantClass>();
+		for (List<GenerateConstantsMojo.ConstantClass> fileClasses : constantsByFile.values()) {
+			constantClasses.addAll(fileClasses);
+		}
+
+		try {
+			constantsGenerator.resetOutputs();
+			constantsGenerator.generateSourceFiles(constantClasses, outputDirectory, outputPackage);
+			constantsGenerator.generateMetadataFilter(constantClasses, constantsFilterFile);
+			constantsGenerator.logOutputSummary();
+		}
+		catch (IOException ex) {
+			getLog().error("Unable to generate constants sources", ex);
+		}
+		catch (MojoFailureException ex) {
+			getLog().error(ex.getMessage());
+		}
+	}
+
+	/**
+	 * Collects the changed files from a signalled watch key. New directories are registered and all their files treated
+	 * as changed, leaving it to {@link #processChanges(java.util.Set, boolean, boolean)} to ignore files which aren't
+	 * inputs.
+	 * @param watcher the watch service
+	 * @param key the watch key
+	 * @param changed the changed files so far
+	 * @return true if events were lost
+	 */
+	protected boolean collectChanges(WatchService watcher, WatchKey key, Set<Path> changed) throws IOException {
+		Path directory = watchedDirectories.get(key);
+		if (directory == null) {
+			return false;
+		}
+
+		boolean overflowed = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				overflowed = true;
+				continue;
+			}
+
+			Path path = directory.resolve((Path) event.context());
+			if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+				registerRecursive(watcher, path);
+				addFiles(changed, new FileScanner(new String[] { "**" }, null, false).scan(path.toFile()));
+			}
+			else {
+				changed.add(path);
+			}
+		}
+		return overflowed;
+	}
+
+	/**
+	 * Resets a watch key after its events have been collected. The key of a directory which has been deleted is no
+	 * longer valid, so it's cancelled and forgotten.
+	 * @param key the watch key
+	 */
+	protected void resetKey(WatchKey key) {
+		if (!key.reset()) {
+			key.cancel();
+			watchedDirectories.remove(key);
+		}
+	}
+
+	/**
+	 * Gets the directories currently being watched
+	 * @return the directories
+	 */
+	protected Collection<Path> getWatchedDirectories() {
+		return watchedDirectories.values();
+	}
+
+	/**
+	 * Registers the given directory and all its sub-directories with the watch service
+	 * @param watcher the watch service
+	 * @param directory the directory
+	 */
+	protected void registerRecursive(final WatchService watcher, Path directory) throws IOException {
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+				watchedDirectories.put(key, dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Checks whether a file is an input file of the given directory, i.e. one that the goal which processes it would find
+	 * @param file the file
+	 * @param directory the input directory (may be null)
+	 * @param scanner the input file scanner
+	 * @return true if the file is an input file
+	 */
+	protected static boolean isInput(File file, File directory, FileScanner scanner) {
+		return isDirectory(directory) && scanner.accepts(directory, file);
+	}
+
+	private static boolean isDirectory(File directory) {
+		return directory != null && directory.isDirectory();
+	}
+
+	private static void addFiles(Set<Path> paths, List<File> files) {
+		for (File file : files) {
+			paths.add(file.toPath());
+		}
+	}
+}
@@ -0,0 +1,179 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.util;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Record of a goal's input digest and output files from its last successful execution. Output paths are stored
+ * relative to a base directory, and the file content doesn't depend on when it was written, so it can be cached along
+ * with the outputs.
+ */
+public class BuildManifest {
+
+	private static final String DIGEST_KEY = "digest";
+
+	private static final String OUTPUT_PREFIX = "output.";
+
+	private final String digest;
+
+	private final List<String> outputs;
+
+	/**
+	 * Creates a manifest
+	 * @param digest the input digest
+	 * @param outputs the output paths relative to the base directory, using / as the separator
+	 */
+	public BuildManifest(String digest, Collection<String> outputs) {
+		this.digest = digest;
+		this.outputs = new ArrayList<String>(new TreeSet<String>(outputs));
+	}
+
+	/**
+	 * Loads a manifest
+	 * @param file the manifest file
+	 * @return the manifest or null if the file doesn't exist
+	 */
+	public static BuildManifest load(File file) throws IOException {
+		if (!file.isFile()) {
+			return null;
+		}
+
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			properties.load(in);
+		}
+		finally {
+			IOUtils.closeQuietly(in);
+		}
+
+		List<String> outputs = new ArrayList<String>();
+		for (int o = 1; properties.containsKey(OUTPUT_PREFIX + o); o++) {
+			outputs.add(properties.getProperty(OUTPUT_PREFIX + o));
+		}
+		return new BuildManifest(properties.getProperty(DIGEST_KEY), outputs);
+	}
+
+	/**
+	 * Saves this manifest
+	 * @param file the manifest file
+	 * @param goal the goal name, used in the header comment
+	 */
+	public void save(File file, String goal) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append("# Inputs and outputs of the last distrotools:").append(goal).append(" execution\n");
+		sb.append(DIGEST_KEY).append("=").append(digest).append("\n");
+		for (int o = 0; o < outputs.size(); o++) {
+			sb.append(OUTPUT_PREFIX).append(o + 1).append("=").append(escape(outputs.get(o))).append("\n");
+		}
+
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+
+		// Only replaced if changed, so that an unchanged manifest keeps its timestamp
+		File tempFile = new File(file.getPath() + ".tmp");
+		try {
+			OutputStream out = new FileOutputStream(tempFile);
+			try {
+				out.write(sb.toString().getBytes("ISO-8859-1"));
+			}
+			finally {
+				out.close();
+			}
+			FileUtils.replaceIfChanged(file, tempFile);
+		}
+		finally {
+			// Only left behind if writing or replacing the manifest failed
+			if (tempFile.exists()) {
+				tempFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Checks whether this manifest has the given digest and all of its outputs exist
+	 * @param digest the current input digest
+	 * @param baseDirectory the base directory of relative output paths
+	 * @return true if the outputs are up to date
+	 */
+	public boolean isUpToDate(String digest, File baseDirectory) {
+		if (!digest.equals(this.digest)) {
+			return false;
+		}
+		for (File output : getOutputFiles(baseDirectory)) {
+			if (!output.isFile()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the output files. Outputs outside the base directory are stored as absolute paths.
+	 * @param baseDirectory the base directory of relative output paths
+	 * @return the output files
+	 */
+	public List<File> getOutputFiles(File baseDirectory) {
+		List<File> files = new ArrayList<File>();
+		for (String output : outputs) {
+			File file = new File(output);
+			files.add(file.isAbsolute() ? file : new File(baseDirectory, output));
+		}
+		return files;
+	}
+
+	public String getDigest() {
+		return digest;
+	}
+
+	public List<String> getOutputs() {
+		return outputs;
+	}
+
+	/**
+	 * Escapes a value for a properties file
+	 */
+	private static String escape(String value) {
+		StringBuilder sb = new StringBuilder();
+		for (int c = 0; c < value.length(); c++) {
+			char ch = value.charAt(c);
+			// Leading spaces would otherwise be skipped when loading
+			if (ch == '\\' || ch == ':' || ch == '=' || ch == '#' || ch == '!' || (ch == ' ' && c == 0)) {
+				sb.append('\\').append(ch);
+			}
+			else if (ch < 0x20 || ch > 0x7E) {
+				sb.append(String.format("\\u%04x", (int) ch));
+			}
+			else {
+				sb.append(ch);
+			}
+		}
+		return sb.toString();
+	}
+}
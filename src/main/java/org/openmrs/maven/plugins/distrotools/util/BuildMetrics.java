@@ -0,0 +1,244 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.util;
+
+import org.apache.commons.io.IOUtils;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects timings and counts for a single goal execution, and writes them as JSON and CSV reports. Phase times are
+ * summed across threads, so for parallel work they may exceed the wall time. Safe for use by multiple threads.
+ */
+public class BuildMetrics {
+
+	private final String goal;
+
+	private final long startTime = System.nanoTime();
+
+	private final Map<String, long[]> phases = new LinkedHashMap<String, long[]>();
+
+	private final List<FileMetric> files = new ArrayList<FileMetric>();
+
+	private long bytesWritten;
+
+	/**
+	 * Creates new metrics for a goal execution
+	 * @param goal the goal name, e.g. validate-forms
+	 */
+	public BuildMetrics(String goal) {
+		this.goal = goal;
+	}
+
+	/**
+	 * Gets the goal name
+	 * @return the goal name
+	 */
+	public String getGoal() {
+		return goal;
+	}
+
+	/**
+	 * Gets a start time for use with the other methods
+	 * @return the start time in nanoseconds
+	 */
+	public long start() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Adds the time since the given start time to a phase
+	 * @param phase the phase name, e.g. parse
+	 * @param start the start time in nanoseconds
+	 */
+	public synchronized void addPhaseTime(String phase, long start) {
+		long[] phaseStats = phases.get(phase);
+		if (phaseStats == null) {
+			phaseStats = new long[2];
+			phases.put(phase, phaseStats);
+		}
+		phaseStats[0]++;
+		phaseStats[1] += System.nanoTime() - start;
+	}
+
+	/**
+	 * Records that an input file was processed
+	 * @param path the file path
+	 * @param bytes the size of the file
+	 * @param start the time in nanoseconds at which processing of the file started
+	 */
+	public synchronized void addFile(String path, long bytes, long start) {
+		files.add(new FileMetric(path, bytes, System.nanoTime() - start));
+	}
+
+	/**
+	 * Records that an output file was written
+	 * @param bytes the size of the file
+	 */
+	public synchronized void addBytesWritten(long bytes) {
+		bytesWritten += bytes;
+	}
+
+	/**
+	 * Writes the report files &lt;goal&gt;-metrics.json and &lt;goal&gt;-metrics.csv to the given directory. The JSON
+	 * report holds the phase times and per-file statistics, and the CSV report has one row per file.
+	 * @param directory the directory
+	 * @param slowestCount the number of slowest files to include in the JSON report
+	 * @return the JSON report file
+	 */
+	public synchronized File writeReports(File directory, int slowestCount) throws IOException {
+		long wallTime = System.nanoTime() - startTime;
+
+		if (!directory.exists()) {
+			directory.mkdirs();
+		}
+
+		List<FileMetric> byDuration = new ArrayList<FileMetric>(files);
+		Collections.sort(byDuration, new Comparator<FileMetric>() {
+			public int compare(FileMetric metric1, FileMetric metric2) {
+				return metric1.nanos < metric2.nanos ? -1 : (metric1.nanos > metric2.nanos ? 1 : metric1.path.compareTo(metric2.path));
+			}
+		});
+
+		long totalBytes = 0;
+		for (FileMetric file : files) {
+			totalBytes += file.bytes;
+		}
+
+		File jsonFile = new File(directory, goal + "-metrics.json");
+		JsonGenerator json = new JsonFactory().createJsonGenerator(jsonFile, JsonEncoding.UTF8);
+		try {
+			json.useDefaultPrettyPrinter();
+			json.writeStartObject();
+			json.writeStringField("goal", goal);
+			json.writeNumberField("timestamp", System.currentTimeMillis());
+			json.writeNumberField("wallTimeMs", millis(wallTime));
+
+			json.writeObjectFieldStart("phases");
+			for (Map.Entry<String, long[]> phase : phases.entrySet()) {
+				json.writeObjectFieldStart(phase.getKey());
+				json.writeNumberField("count", phase.getValue()[0]);
+				json.writeNumberField("totalMs", millis(phase.getValue()[1]));
+				json.writeEndObject();
+			}
+			json.writeEndObject();
+
+			json.writeObjectFieldStart("files");
+			json.writeNumberField("count", files.size());
+			json.writeNumberField("bytes", totalBytes);
+			json.writeNumberField("bytesWritten", bytesWritten);
+			if (!byDuration.isEmpty()) {
+				json.writeNumberField("minMs", millis(byDuration.get(0).nanos));
+				json.writeNumberField("p50Ms", millis(percentile(byDuration, 50)));
+				json.writeNumberField("p90Ms", millis(percentile(byDuration, 90)));
+				json.writeNumberField("p99Ms", millis(percentile(byDuration, 99)));
+				json.writeNumberField("maxMs", millis(byDuration.get(byDuration.size() - 1).nanos));
+			}
+			json.writeEndObject();
+
+			json.writeArrayFieldStart("slowest");
+			for (int f = byDuration.size() - 1; f >= 0 && f >= byDuration.size() - slowestCount; f--) {
+				FileMetric file = byDuration.get(f);
+				json.writeStartObject();
+				json.writeStringField("path", file.path);
+				json.writeNumberField("bytes", file.bytes);
+				json.writeNumberField("ms", millis(file.nanos));
+				json.writeEndObject();
+			}
+			json.writeEndArray();
+
+			json.writeEndObject();
+		}
+		finally {
+			json.close();
+		}
+
+		Writer csv = new OutputStreamWriter(new FileOutputStream(new File(directory, goal + "-metrics.csv")), "UTF-8");
+		try {
+			csv.write("path,bytes,ms\n");
+			for (FileMetric file : files) {
+				csv.write(csvValue(file.path) + "," + file.bytes + "," + millis(file.nanos) + "\n");
+			}
+		}
+		finally {
+			IOUtils.closeQuietly(csv);
+		}
+
+		return jsonFile;
+	}
+
+	/**
+	 * Gets the nearest-rank percentile of the given sorted file durations
+	 * @param sorted the file metrics sorted by duration
+	 * @param percent the percentile
+	 * @return the duration in nanoseconds
+	 */
+	protected static long percentile(List<FileMetric> sorted, int percent) {
+		int rank = (int) Math.ceil(percent / 100.0 * sorted.size());
+		return sorted.get(Math.max(0, rank - 1)).nanos;
+	}
+
+	/**
+	 * Converts nanoseconds to milliseconds, rounded to microseconds
+	 * @param nanos the nanoseconds
+	 * @return the milliseconds
+	 */
+	protected static double millis(long nanos) {
+		return Math.round(nanos / 1000.0) / 1000.0;
+	}
+
+	/**
+	 * Quotes a CSV value if necessary
+	 * @param value the value
+	 * @return the CSV value
+	 */
+	protected static String csvValue(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+			return value;
+		}
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+	/**
+	 * Metrics for a single input file
+	 */
+	protected static class FileMetric {
+
+		private final String path;
+
+		private final long bytes;
+
+		private final long nanos;
+
+		public FileMetric(String path, long bytes, long nanos) {
+			this.path = path;
+			this.bytes = bytes;
+			this.nanos = nanos;
+		}
+	}
+}
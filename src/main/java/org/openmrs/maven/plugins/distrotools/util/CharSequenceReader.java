@@ -0,0 +1,73 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.util;
+
+import java.io.Reader;
+
+/**
+ * Reader of a char sequence, such as a string builder or char buffer, which doesn't copy the sequence. The sequence
+ * shouldn't be modified while it's being read.
+ */
+public class CharSequenceReader extends Reader {
+
+	private final CharSequence chars;
+
+	private int position;
+
+	/**
+	 * Creates a reader
+	 * @param chars the char sequence
+	 */
+	public CharSequenceReader(CharSequence chars) {
+		this.chars = chars;
+	}
+
+	/**
+	 * @see java.io.Reader#read()
+	 */
+	@Override
+	public int read() {
+		return position < chars.length() ? chars.charAt(position++) : -1;
+	}
+
+	/**
+	 * @see java.io.Reader#read(char[], int, int)
+	 */
+	@Override
+	public int read(char[] buffer, int offset, int length) {
+		if (position >= chars.length()) {
+			return -1;
+		}
+
+		int count = Math.min(length, chars.length() - position);
+		if (chars instanceof StringBuilder) {
+			((StringBuilder) chars).getChars(position, position + count, buffer, offset);
+		}
+		else {
+			for (int c = 0; c < count; c++) {
+				buffer[offset + c] = chars.charAt(position + c);
+			}
+		}
+		position += count;
+		return count;
+	}
+
+	/**
+	 * @see java.io.Reader#close()
+	 */
+	@Override
+	public void close() {
+	}
+}
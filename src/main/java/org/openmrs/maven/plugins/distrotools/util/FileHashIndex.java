@@ -0,0 +1,62 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of file content hashes. A file is only hashed again if its size or modification time has changed since it was
+ * last hashed. Safe for use by multiple threads.
+ */
+public class FileHashIndex {
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * Gets the SHA-1 digest of the given file's content
+	 * @param file the file
+	 * @return the digest as a hex string
+	 */
+	public String getHash(File file) throws IOException {
+		String path = file.getCanonicalPath();
+		long length = file.length();
+		long lastModified = file.lastModified();
+
+		Entry entry = entries.get(path);
+		if (entry == null || entry.length != length || entry.lastModified != lastModified) {
+			entry = new Entry(length, lastModified, FileUtils.digest(file));
+			entries.put(path, entry);
+		}
+		return entry.hash;
+	}
+
+	private static class Entry {
+
+		private final long length;
+
+		private final long lastModified;
+
+		private final String hash;
+
+		public Entry(long length, long lastModified, String hash) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.hash = hash;
+		}
+	}
+}
@@ -0,0 +1,273 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds files in a directory tree whose paths (relative to the base directory) match include and exclude glob
+ * patterns, e.g. "**&#47;*.xml". Directories matching an exclude pattern are not descended into. Symbolic links are
+ * followed, except those which lead back to a directory being scanned, and broken links are ignored. Uses NIO so each
+ * directory entry's attributes are read once, and can optionally scan sub-directories in parallel. Results are always
+ * sorted by relative path.
+ */
+public class FileScanner {
+
+	private final List<PathMatcher> includes;
+
+	private final List<PathMatcher> excludes;
+
+	private final boolean parallel;
+
+	/**
+	 * Creates a new file scanner
+	 * @param includes the include glob patterns (at least one required)
+	 * @param excludes the exclude glob patterns (may be null)
+	 * @param parallel whether to scan sub-directories in parallel
+	 */
+	public FileScanner(String[] includes, String[] excludes, boolean parallel) {
+		FileSystem fileSystem = FileSystems.getDefault();
+		this.includes = compile(fileSystem, includes);
+		this.excludes = compile(fileSystem, excludes);
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Scans the given directory
+	 * @param directory the base directory
+	 * @return the matching files sorted by relative path
+	 */
+	public List<File> scan(File directory) throws IOException {
+		final Path base = directory.toPath();
+		List<Path> found;
+
+		if (parallel) {
+			ForkJoinPool pool = new ForkJoinPool();
+			try {
+				found = pool.invoke(new DirectoryTask(base, base, Collections.<Path>emptyList()));
+			}
+			catch (RuntimeException ex) {
+				// Exceptions thrown by other worker threads may be wrapped again when joined
+				for (Throwable cause = ex.getCause(); cause != null; cause = cause.getCause()) {
+					if (cause instanceof IOException) {
+						throw (IOException) cause;
+					}
+				}
+				throw ex;
+			}
+			finally {
+				pool.shutdown();
+			}
+		}
+		else {
+			final List<Path> files = new ArrayList<Path>();
+			Files.walkFileTree(base, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+					return dir.equals(base) || !isExcluded(base.relativize(dir)) ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+				}
+
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+					if (attrs.isRegularFile() && isMatch(base.relativize(file))) {
+						files.add(file);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException ex) throws IOException {
+					// A link back to a directory which is already being scanned
+					if (ex instanceof FileSystemLoopException) {
+						return FileVisitResult.CONTINUE;
+					}
+					throw ex;
+				}
+			});
+			found = files;
+		}
+
+		// Sort by relative path with / separators so that results are the same on all platforms
+		Map<String, File> sorted = new TreeMap<String, File>();
+		for (Path path : found) {
+			sorted.put(base.relativize(path).toString().replace(File.separatorChar, '/'), path.toFile());
+		}
+		return new ArrayList<File>(sorted.values());
+	}
+
+	/**
+	 * Checks whether a file would be found by scanning the given directory, i.e. its relative path matches and none of
+	 * the directories between it and the base directory are excluded. The file doesn't need to exist.
+	 * @param directory the base directory
+	 * @param file the file
+	 * @return true if the file would be found
+	 */
+	public boolean accepts(File directory, File file) {
+		Path base = directory.toPath(), path = file.toPath();
+		if (!path.startsWith(base) || path.equals(base)) {
+			return false;
+		}
+
+		Path relativePath = base.relativize(path);
+		for (Path parent = relativePath.getParent(); parent != null; parent = parent.getParent()) {
+			if (isExcluded(parent)) {
+				return false;
+			}
+		}
+		return isMatch(relativePath);
+	}
+
+	/**
+	 * Checks whether the given relative file path is included and not excluded
+	 * @param relativePath the relative path
+	 * @return true if the file matches
+	 */
+	protected boolean isMatch(Path relativePath) {
+		return matchesAny(includes, relativePath) && !matchesAny(excludes, relativePath);
+	}
+
+	/**
+	 * Checks whether the given relative path is excluded
+	 * @param relativePath the relative path
+	 * @return true if excluded
+	 */
+	protected boolean isExcluded(Path relativePath) {
+		return matchesAny(excludes, relativePath);
+	}
+
+	/**
+	 * Scans a single directory, forking a task for each sub-directory
+	 */
+	protected class DirectoryTask extends RecursiveTask<List<Path>> {
+
+		private final Path base;
+
+		private final Path directory;
+
+		private final List<Path> ancestors;
+
+		/**
+		 * Creates a task
+		 * @param base the base directory
+		 * @param directory the directory to scan
+		 * @param ancestors the real paths of the directories above this one, used to detect link loops
+		 */
+		public DirectoryTask(Path base, Path directory, List<Path> ancestors) {
+			this.base = base;
+			this.directory = directory;
+			this.ancestors = ancestors;
+		}
+
+		@Override
+		protected List<Path> compute() {
+			List<Path> files = new ArrayList<Path>();
+			List<DirectoryTask> subtasks = new ArrayList<DirectoryTask>();
+
+			try {
+				List<Path> path = new ArrayList<Path>(ancestors);
+				path.add(directory.toRealPath());
+
+				DirectoryStream<Path> entries = Files.newDirectoryStream(directory);
+				try {
+					for (Path entry : entries) {
+						BasicFileAttributes attrs = readAttributes(entry);
+						Path relativePath = base.relativize(entry);
+						if (attrs.isDirectory()) {
+							if (!isExcluded(relativePath) && !path.contains(entry.toRealPath())) {
+								DirectoryTask subtask = new DirectoryTask(base, entry, path);
+								subtask.fork();
+								subtasks.add(subtask);
+							}
+						}
+						else if (attrs.isRegularFile() && isMatch(relativePath)) {
+							files.add(entry);
+						}
+					}
+				}
+				finally {
+					entries.close();
+				}
+			}
+			catch (IOException ex) {
+				throw new RuntimeException(ex);
+			}
+
+			for (DirectoryTask subtask : subtasks) {
+				files.addAll(subtask.join());
+			}
+			return files;
+		}
+	}
+
+	/**
+	 * Reads the attributes of a file, following symbolic links unless the link can't be followed, e.g. it's broken or
+	 * refers to itself, as when walking the tree serially
+	 */
+	private static BasicFileAttributes readAttributes(Path file) throws IOException {
+		try {
+			return Files.readAttributes(file, BasicFileAttributes.class);
+		}
+		catch (IOException ex) {
+			return Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		}
+	}
+
+	private static boolean matchesAny(List<PathMatcher> matchers, Path path) {
+		for (PathMatcher matcher : matchers) {
+			if (matcher.matches(path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Compiles glob patterns. As a "**&#47;" prefix would otherwise require at least one directory, such patterns also
+	 * match paths in the base directory itself.
+	 */
+	private static List<PathMatcher> compile(FileSystem fileSystem, String[] patterns) {
+		List<PathMatcher> matchers = new ArrayList<PathMatcher>();
+		if (patterns != null) {
+			for (String pattern : patterns) {
+				matchers.add(fileSystem.getPathMatcher("glob:" + pattern));
+				if (pattern.startsWith("**/")) {
+					matchers.add(fileSystem.getPathMatcher("glob:" + pattern.substring(3)));
+				}
+			}
+		}
+		return matchers;
+	}
+}
@@ -14,8 +14,17 @@
 
 package org.openmrs.maven.plugins.distrotools.util;
 
+import org.apache.commons.io.IOUtils;
+
 import java.io.File;
-import java.util.ArrayList;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
 
 /**
@@ -24,31 +33,159 @@ import java.util.List;
 public class FileUtils {
 
 	/**
-	 * Gets all of the files in the given directory with the given extension
+	 * Gets all of the files in the given directory and its sub-directories with the given extension
 	 * @param directory the directory
-	 * @param extension the extension
-	 * @return the files
+	 * @param extension the extension (without the dot)
+	 * @return the files sorted by relative path
 	 */
-	public static List<File> getFilesInDirectory(File directory, String extension) {
-		List<File> files = new ArrayList<File>();
-		getFilesInDirectoryRecursive(directory, extension, files);
-		return files;
+	public static List<File> getFilesInDirectory(File directory, String extension) throws IOException {
+		return new FileScanner(new String[] { getExtensionPattern(extension) }, null, false).scan(directory);
 	}
 
 	/**
-	 * Recursively fetches form files from the given directory and its sub-directories
-	 * @param directory the directory
-	 * @param extension the extension
-	 * @param files the files found so far
+	 * Gets the glob pattern which matches files with the given extension in any directory
+	 * @param extension the extension (without the dot)
+	 * @return the glob pattern
+	 */
+	public static String getExtensionPattern(String extension) {
+		return "**/*." + extension;
+	}
+
+	/**
+	 * Calculates a digest of the paths, sizes and modification times of the given files. This is a cheap way to tell
+	 * whether a set of files has changed, without reading them.
+	 * @param files the files
+	 * @return the digest as a hex string
 	 */
-	private static void getFilesInDirectoryRecursive(File directory, String extension, List<File> files) {
-		for (File child : directory.listFiles()) {
-			if (child.getName().endsWith(extension)) {
-				files.add(child);
+	public static String stampDigest(List<File> files) throws IOException {
+		MessageDigest digest = createDigest();
+		for (File file : files) {
+			String stamp = file.getCanonicalPath() + "|" + file.length() + "|" + file.lastModified() + "\n";
+			digest.update(stamp.getBytes(Charset.forName("UTF-8")));
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Replaces a file with a newly written file, unless the file already exists with exactly the same content, in which
+	 * case the new file is deleted. Files are compared a buffer at a time rather than loaded into memory.
+	 * @param file the file
+	 * @param newFile the newly written file
+	 * @return true if the file was replaced
+	 */
+	public static boolean replaceIfChanged(File file, File newFile) throws IOException {
+		if (file.isFile() && file.length() == newFile.length() && contentEquals(file, newFile)) {
+			if (!newFile.delete()) {
+				throw new IOException("Unable to delete " + newFile.getPath());
 			}
-			else if (child.isDirectory()) {
-				getFilesInDirectoryRecursive(child, extension, files);
+			return false;
+		}
+
+		Files.move(newFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return true;
+	}
+
+	/**
+	 * Checks whether two files have the same content
+	 * @param file1 the first file
+	 * @param file2 the second file
+	 * @return true if the contents are equal
+	 */
+	public static boolean contentEquals(File file1, File file2) throws IOException {
+		InputStream in1 = new FileInputStream(file1);
+		InputStream in2 = null;
+		try {
+			in2 = new FileInputStream(file2);
+			byte[] buffer1 = new byte[8192], buffer2 = new byte[8192];
+			while (true) {
+				int read1 = readFully(in1, buffer1);
+				int read2 = readFully(in2, buffer2);
+				if (read1 != read2) {
+					return false;
+				}
+				if (read1 == 0) {
+					return true;
+				}
+				for (int b = 0; b < read1; b++) {
+					if (buffer1[b] != buffer2[b]) {
+						return false;
+					}
+				}
 			}
 		}
+		finally {
+			IOUtils.closeQuietly(in1);
+			IOUtils.closeQuietly(in2);
+		}
+	}
+
+	/**
+	 * Reads from a stream until the buffer is full or the stream ends
+	 * @param in the input stream
+	 * @param buffer the buffer
+	 * @return the number of bytes read
+	 */
+	private static int readFully(InputStream in, byte[] buffer) throws IOException {
+		int total = 0, read;
+		while (total < buffer.length && (read = in.read(buffer, total, buffer.length - total)) != -1) {
+			total += read;
+		}
+		return total;
+	}
+
+	/**
+	 * Calculates the SHA-1 digest of the given file's content
+	 * @param file the file
+	 * @return the digest as a hex string
+	 */
+	public static String digest(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			return digest(in);
+		}
+		finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Calculates the SHA-1 digest of the given stream's content. The stream is not closed.
+	 * @param in the input stream
+	 * @return the digest as a hex string
+	 */
+	public static String digest(InputStream in) throws IOException {
+		MessageDigest digest = createDigest();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			digest.update(buffer, 0, read);
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Creates a new SHA-1 message digest
+	 * @return the message digest
+	 */
+	public static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("SHA-1 is not supported by this JVM", ex);
+		}
+	}
+
+	/**
+	 * Converts the given bytes to a lowercase hex string
+	 * @param bytes the bytes
+	 * @return the hex string
+	 */
+	public static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
 	}
 }
\ No newline at end of file
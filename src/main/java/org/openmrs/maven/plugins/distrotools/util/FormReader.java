@@ -0,0 +1,132 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.util;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reads form files as UTF-8 into buffers which are reused from one file to the next, so reading a large set of forms
+ * allocates little beyond the largest form. Files are read through a channel and decoded directly into a char buffer,
+ * and comments are stripped into a string builder. The content returned by each method is only valid until the next
+ * file is read. Not safe for use by multiple threads, so each worker should have its own.
+ */
+public class FormReader {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+	private final CharsetDecoder decoder = UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPORT)
+			.onUnmappableCharacter(CodingErrorAction.REPORT);
+
+	private final ByteBuffer bytes = ByteBuffer.allocate(16 * 1024);
+
+	private CharBuffer chars = CharBuffer.allocate(16 * 1024);
+
+	private final StringBuilder stripped = new StringBuilder(16 * 1024);
+
+	/**
+	 * Reads the given form file
+	 * @param file the form file
+	 * @return the content, without any byte order mark
+	 * @throws IOException if the file can't be read or isn't valid UTF-8
+	 */
+	public CharBuffer read(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+
+			// A UTF-8 file never has more chars than bytes, so this is only exceeded if the file grows
+			long size = channel.size();
+			if (size > chars.capacity() && size < Integer.MAX_VALUE) {
+				chars = CharBuffer.allocate((int) size);
+			}
+
+			decoder.reset();
+			chars.clear();
+			bytes.clear();
+
+			boolean endOfInput = false;
+			while (!endOfInput) {
+				endOfInput = channel.read(bytes) < 0;
+				bytes.flip();
+				CoderResult result;
+				while ((result = decoder.decode(bytes, chars, endOfInput)).isOverflow()) {
+					growChars();
+				}
+				if (result.isError()) {
+					throw new IOException("Content is not valid UTF-8");
+				}
+				bytes.compact();
+			}
+			while (decoder.flush(chars).isOverflow()) {
+				growChars();
+			}
+		}
+		finally {
+			IOUtils.closeQuietly(in);
+		}
+
+		chars.flip();
+		if (chars.hasRemaining() && chars.get(0) == BYTE_ORDER_MARK) {
+			chars.position(1);
+		}
+		return chars;
+	}
+
+	/**
+	 * Reads the given form file and strips its comments
+	 * @param file the form file
+	 * @return the content without comments
+	 * @throws IOException if the file can't be read or isn't valid UTF-8
+	 * @see XmlUtils#stripComments(CharSequence, StringBuilder)
+	 */
+	public StringBuilder readWithoutComments(File file) throws IOException {
+		return stripComments(read(file));
+	}
+
+	/**
+	 * Strips comments from content which has been read
+	 * @param content the content
+	 * @return the content without comments
+	 */
+	public StringBuilder stripComments(CharSequence content) {
+		stripped.setLength(0);
+		XmlUtils.stripComments(content, stripped);
+		return stripped;
+	}
+
+	/**
+	 * Doubles the capacity of the char buffer, keeping its content
+	 */
+	private void growChars() {
+		CharBuffer larger = CharBuffer.allocate(chars.capacity() * 2);
+		chars.flip();
+		larger.put(chars);
+		chars = larger;
+	}
+}
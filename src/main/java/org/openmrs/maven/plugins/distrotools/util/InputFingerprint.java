@@ -0,0 +1,81 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.List;
+
+/**
+ * Digest of everything a goal's outputs depend on. Input files are identified by their path relative to their input
+ * directory and their content hash, so the digest is the same on any machine with the same inputs.
+ */
+public class InputFingerprint {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final MessageDigest digest = FileUtils.createDigest();
+
+	/**
+	 * Adds a named value, e.g. a goal parameter
+	 * @param name the name
+	 * @param value the value (may be null)
+	 * @return this fingerprint
+	 */
+	public InputFingerprint add(String name, Object value) {
+		update("value", name, String.valueOf(value));
+		return this;
+	}
+
+	/**
+	 * Adds input files
+	 * @param directory the input directory
+	 * @param files the input files in that directory
+	 * @param hashes the file hash index
+	 * @return this fingerprint
+	 */
+	public InputFingerprint addFiles(File directory, List<File> files, FileHashIndex hashes) throws IOException {
+		String base = directory.getCanonicalPath() + File.separator;
+		for (File file : files) {
+			String path = file.getCanonicalPath();
+			if (path.startsWith(base)) {
+				path = path.substring(base.length());
+			}
+			update("file", path.replace(File.separatorChar, '/'), hashes.getHash(file));
+		}
+		return this;
+	}
+
+	/**
+	 * Gets the digest of everything added so far
+	 * @return the digest as a hex string
+	 */
+	public String getDigest() {
+		try {
+			return FileUtils.toHex(((MessageDigest) digest.clone()).digest());
+		}
+		catch (CloneNotSupportedException ex) {
+			throw new IllegalStateException("Message digest can't be cloned", ex);
+		}
+	}
+
+	private void update(String kind, String name, String value) {
+		// Lengths are included so that different entries can't run together into the same bytes
+		String entry = kind + ":" + name.length() + ":" + name + "=" + value.length() + ":" + value + "\n";
+		digest.update(entry.getBytes(UTF8));
+	}
+}
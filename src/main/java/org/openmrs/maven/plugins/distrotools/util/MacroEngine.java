@@ -0,0 +1,175 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Expands $name macro references in a single left to right scan. Macro names are compiled into a trie, so each
+ * reference costs at most one step per character of the longest name, however many macros there are. Where one name is
+ * a prefix of another, the longest name is always matched, e.g. $yesNo is never treated as $yes followed by "No".
+ * Immutable and so safe for use by multiple threads.
+ */
+public class MacroEngine {
+
+	private static final char MACRO_CHAR = '$';
+
+	// Number of leading characters an undefined name must share with a macro name to be reported
+	private static final int MISSPELT_PREFIX_LENGTH = 2;
+
+	private final Node root = new Node();
+
+	/**
+	 * Creates an engine for the given macros
+	 * @param macros the macro values by name
+	 */
+	public MacroEngine(Map<String, String> macros) {
+		for (Map.Entry<String, String> macro : macros.entrySet()) {
+			add(macro.getKey(), macro.getValue());
+		}
+	}
+
+	/**
+	 * Creates an engine for the given macros
+	 * @param macros the macro values by name
+	 */
+	public MacroEngine(Properties macros) {
+		for (String name : macros.stringPropertyNames()) {
+			add(name, macros.getProperty(name));
+		}
+	}
+
+	/**
+	 * Expands macro references in the given text. A $name which isn't a macro is only reported as an undefined reference
+	 * if it's probably a misspelt macro, i.e. it starts with the same two characters as a macro name. Other $ tokens,
+	 * e.g. jQuery calls like $j(...) and $(...), are left alone.
+	 * @param text the text
+	 * @param out the output
+	 * @param undefined the collection to add the names of undefined references to (may be null)
+	 */
+	public void expand(CharSequence text, Appendable out, Collection<String> undefined) throws IOException {
+		int length = text.length();
+		int copyFrom = 0;
+
+		for (int c = 0; c < length; c++) {
+			if (text.charAt(c) != MACRO_CHAR) {
+				continue;
+			}
+
+			// Walk the trie as far as the text allows, remembering the last node which ends a name
+			Node node = root;
+			String value = null;
+			int end = c + 1;
+			int matched = 0;
+			for (int n = c + 1; n < length && node != null; n++) {
+				node = node.child(text.charAt(n));
+				if (node != null) {
+					matched++;
+					if (node.value != null) {
+						value = node.value;
+						end = n + 1;
+					}
+				}
+			}
+
+			if (value != null) {
+				out.append(text, copyFrom, c).append(value);
+				copyFrom = end;
+				c = end - 1;
+			}
+			else if (undefined != null && c + 1 < length && Character.isLetter(text.charAt(c + 1))) {
+				int nameEnd = c + 1;
+				while (nameEnd < length && isNameChar(text.charAt(nameEnd))) {
+					nameEnd++;
+				}
+				if (matched >= MISSPELT_PREFIX_LENGTH) {
+					undefined.add(text.subSequence(c + 1, nameEnd).toString());
+				}
+			}
+		}
+		out.append(text, copyFrom, length);
+	}
+
+	/**
+	 * Expands macro references in the given text
+	 * @param text the text
+	 * @param undefined the collection to add the names of undefined references to (may be null)
+	 * @return the expanded text
+	 */
+	public String expand(String text, Collection<String> undefined) {
+		StringBuilder sb = new StringBuilder(text.length());
+		try {
+			expand(text, sb, undefined);
+		}
+		catch (IOException ex) {
+			throw new IllegalStateException("Unable to expand macros", ex);
+		}
+		return sb.toString();
+	}
+
+	private void add(String name, String value) {
+		Node node = root;
+		for (int c = 0; c < name.length(); c++) {
+			node = node.addChild(name.charAt(c));
+		}
+		node.value = value;
+	}
+
+	private static boolean isNameChar(char ch) {
+		return Character.isLetterOrDigit(ch) || ch == '_' || ch == '.' || ch == '-';
+	}
+
+	/**
+	 * A trie node, with children kept in parallel arrays sorted by character
+	 */
+	private static class Node {
+
+		private char[] chars = new char[0];
+
+		private Node[] children = new Node[0];
+
+		// The value of the macro whose name ends at this node (null if none does)
+		private String value;
+
+		private Node child(char ch) {
+			int index = Arrays.binarySearch(chars, ch);
+			return index >= 0 ? children[index] : null;
+		}
+
+		private Node addChild(char ch) {
+			int index = Arrays.binarySearch(chars, ch);
+			if (index >= 0) {
+				return children[index];
+			}
+
+			int insertAt = -index - 1;
+			char[] newChars = new char[chars.length + 1];
+			Node[] newChildren = new Node[children.length + 1];
+			System.arraycopy(chars, 0, newChars, 0, insertAt);
+			System.arraycopy(children, 0, newChildren, 0, insertAt);
+			newChars[insertAt] = ch;
+			newChildren[insertAt] = new Node();
+			System.arraycopy(chars, insertAt, newChars, insertAt + 1, chars.length - insertAt);
+			System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+			chars = newChars;
+			children = newChildren;
+			return children[insertAt];
+		}
+	}
+}
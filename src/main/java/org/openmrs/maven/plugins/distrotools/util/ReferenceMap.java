@@ -0,0 +1,470 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Compact map of reference keys to UUIDs which iterates in insertion order. Keys are stored as ids in a string table
+ * which can be shared between maps. Canonical UUIDs (8-4-4-4-12 hex digits, all lower or all upper case) are packed
+ * into two longs, and any other UUIDs are stored as strings. Putting an existing key replaces its UUID but keeps its
+ * position, like {@link java.util.LinkedHashMap}. The map can only be modified through {@link #put(String, String)}.
+ * A reverse index of UUIDs is built the first time {@link #findKey(String)} is called, and maintained from then on.
+ * Not safe for use by multiple threads while it's being modified, but once it's no longer modified, lookups can be
+ * made from multiple threads.
+ */
+public class ReferenceMap extends AbstractMap<String, String> {
+
+	private static final byte LOWER_CASE = 0;
+
+	private static final byte UPPER_CASE = 1;
+
+	private static final byte NON_CANONICAL = 2;
+
+	private static final char[] LOWER_DIGITS = "0123456789abcdef".toCharArray();
+
+	private static final char[] UPPER_DIGITS = "0123456789ABCDEF".toCharArray();
+
+	private final StringTable keys;
+
+	private int[] keyIds = new int[8];
+
+	private long[] mostSigBits = new long[8];
+
+	private long[] leastSigBits = new long[8];
+
+	private byte[] formats = new byte[8];
+
+	// Only allocated if there are non-canonical UUIDs
+	private String[] nonCanonical;
+
+	private int size;
+
+	// Open addressing index of entry positions plus one, with zero meaning an empty slot
+	private int[] slots = new int[16];
+
+	// Open addressing index of entry positions plus one by UUID, only allocated once a UUID is looked up. Entries whose
+	// UUID has since been replaced are left in place and skipped by lookups.
+	private volatile int[] uuidSlots;
+
+	private int uuidSlotsUsed;
+
+	private Set<Map.Entry<String, String>> entrySet;
+
+	/**
+	 * Creates an empty map with its own key table
+	 */
+	public ReferenceMap() {
+		this(new StringTable());
+	}
+
+	/**
+	 * Creates an empty map
+	 * @param keys the key table, which may be shared with other maps
+	 */
+	public ReferenceMap(StringTable keys) {
+		this.keys = keys;
+	}
+
+	/**
+	 * @see java.util.Map#put(Object, Object)
+	 */
+	@Override
+	public String put(String key, String uuid) {
+		if (key == null || uuid == null) {
+			throw new NullPointerException("Keys and UUIDs can't be null");
+		}
+
+		int keyId = keys.add(key);
+		int slot = findSlot(keyId);
+		int position;
+		String previous = null;
+
+		if (slots[slot] != 0) {
+			position = slots[slot] - 1;
+			previous = getUuid(position);
+		}
+		else {
+			if (size == keyIds.length) {
+				grow();
+			}
+			position = size++;
+			keyIds[position] = keyId;
+			slots[slot] = position + 1;
+		}
+
+		setUuid(position, uuid);
+
+		if (size * 2 > slots.length) {
+			rehash(slots.length * 2);
+		}
+		if (uuidSlots != null && !uuid.equals(previous)) {
+			addToUuidIndex(position);
+		}
+		return previous;
+	}
+
+	/**
+	 * Finds the key of the first reference to the given UUID
+	 * @param uuid the UUID
+	 * @return the key or null if no reference has that UUID
+	 */
+	public String findKey(String uuid) {
+		int[] index = uuidSlots;
+		if (index == null) {
+			index = buildUuidIndex();
+		}
+
+		boolean canonical = isCanonical(uuid);
+		long most = 0, least = 0;
+		byte format = NON_CANONICAL;
+		int hash;
+		if (canonical) {
+			most = pack(uuid, 0);
+			least = pack(uuid, 16);
+			format = isUpperCase(uuid) ? UPPER_CASE : LOWER_CASE;
+			hash = hashBits(most, least);
+		}
+		else {
+			hash = mix(uuid.hashCode());
+		}
+
+		int mask = index.length - 1;
+		for (int slot = hash & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+			int position = index[slot] - 1;
+			if (formats[position] != format) {
+				continue;
+			}
+			boolean matches = canonical
+					? mostSigBits[position] == most && leastSigBits[position] == least
+					: nonCanonical[position].equals(uuid);
+			if (matches) {
+				return keys.get(keyIds[position]);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Estimates the memory used by this map's arrays, not including its key table, which may be shared. Non-canonical
+	 * UUIDs are counted as 24 byte strings plus their character arrays.
+	 * @return the estimated number of bytes
+	 */
+	public long estimateMemory() {
+		long bytes = StringTable.arrayBytes(keyIds.length, 4) + StringTable.arrayBytes(mostSigBits.length, 8)
+				+ StringTable.arrayBytes(leastSigBits.length, 8) + StringTable.arrayBytes(formats.length, 1)
+				+ StringTable.arrayBytes(slots.length, 4);
+
+		int[] index = uuidSlots;
+		if (index != null) {
+			bytes += StringTable.arrayBytes(index.length, 4);
+		}
+		if (nonCanonical != null) {
+			bytes += StringTable.arrayBytes(nonCanonical.length, 4);
+			for (String uuid : nonCanonical) {
+				if (uuid != null) {
+					bytes += 24 + StringTable.arrayBytes(uuid.length(), 2);
+				}
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * @see java.util.Map#get(Object)
+	 */
+	@Override
+	public String get(Object key) {
+		int position = findPosition(key);
+		return position >= 0 ? getUuid(position) : null;
+	}
+
+	/**
+	 * @see java.util.Map#containsKey(Object)
+	 */
+	@Override
+	public boolean containsKey(Object key) {
+		return findPosition(key) >= 0;
+	}
+
+	/**
+	 * @see java.util.Map#size()
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @see java.util.Map#entrySet()
+	 */
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new AbstractSet<Map.Entry<String, String>>() {
+				@Override
+				public Iterator<Map.Entry<String, String>> iterator() {
+					return new Iterator<Map.Entry<String, String>>() {
+						private int position = 0;
+
+						public boolean hasNext() {
+							return position < size;
+						}
+
+						public Map.Entry<String, String> next() {
+							if (position >= size) {
+								throw new NoSuchElementException();
+							}
+							Map.Entry<String, String> entry = new SimpleImmutableEntry<String, String>(keys.get(keyIds[position]), getUuid(position));
+							position++;
+							return entry;
+						}
+
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		}
+		return entrySet;
+	}
+
+	/**
+	 * Checks whether a UUID can be packed, i.e. is 8-4-4-4-12 hex digits which are all lower or all upper case
+	 * @param uuid the UUID
+	 * @return true if it can be packed
+	 */
+	protected static boolean isCanonical(String uuid) {
+		if (uuid.length() != 36) {
+			return false;
+		}
+
+		boolean lower = false, upper = false;
+		for (int c = 0; c < 36; c++) {
+			char ch = uuid.charAt(c);
+			if (c == 8 || c == 13 || c == 18 || c == 23) {
+				if (ch != '-') {
+					return false;
+				}
+			}
+			else if (ch >= 'a' && ch <= 'f') {
+				lower = true;
+			}
+			else if (ch >= 'A' && ch <= 'F') {
+				upper = true;
+			}
+			else if (ch < '0' || ch > '9') {
+				return false;
+			}
+		}
+		return !(lower && upper);
+	}
+
+	private void setUuid(int position, String uuid) {
+		if (isCanonical(uuid)) {
+			mostSigBits[position] = pack(uuid, 0);
+			leastSigBits[position] = pack(uuid, 16);
+			formats[position] = isUpperCase(uuid) ? UPPER_CASE : LOWER_CASE;
+
+			if (nonCanonical != null) {
+				nonCanonical[position] = null;
+			}
+		}
+		else {
+			if (nonCanonical == null) {
+				nonCanonical = new String[keyIds.length];
+			}
+			nonCanonical[position] = uuid;
+			formats[position] = NON_CANONICAL;
+		}
+	}
+
+	private String getUuid(int position) {
+		if (formats[position] == NON_CANONICAL) {
+			return nonCanonical[position];
+		}
+
+		char[] digits = formats[position] == UPPER_CASE ? UPPER_DIGITS : LOWER_DIGITS;
+		char[] uuid = new char[36];
+		long most = mostSigBits[position], least = leastSigBits[position];
+		int digit = 0;
+
+		for (int c = 0; c < 36; c++) {
+			if (c == 8 || c == 13 || c == 18 || c == 23) {
+				uuid[c] = '-';
+			}
+			else {
+				long bits = digit < 16 ? most : least;
+				int shift = (15 - (digit % 16)) * 4;
+				uuid[c] = digits[(int) (bits >>> shift) & 0xF];
+				digit++;
+			}
+		}
+		return new String(uuid);
+	}
+
+	/**
+	 * Packs 16 hex digits of a canonical UUID into a long
+	 * @param uuid the UUID
+	 * @param firstDigit the index of the first digit, ignoring dashes
+	 * @return the bits
+	 */
+	private static long pack(String uuid, int firstDigit) {
+		long bits = 0;
+		int digit = 0;
+		for (int c = 0; c < 36 && digit < firstDigit + 16; c++) {
+			char ch = uuid.charAt(c);
+			if (ch != '-') {
+				if (digit >= firstDigit) {
+					bits = (bits << 4) | Character.digit(ch, 16);
+				}
+				digit++;
+			}
+		}
+		return bits;
+	}
+
+	private static boolean isUpperCase(String uuid) {
+		for (int c = 0; c < uuid.length(); c++) {
+			if (uuid.charAt(c) >= 'A' && uuid.charAt(c) <= 'F') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int findPosition(Object key) {
+		if (!(key instanceof String)) {
+			return -1;
+		}
+		int keyId = keys.find((String) key);
+		if (keyId < 0) {
+			return -1;
+		}
+		return slots[findSlot(keyId)] - 1;
+	}
+
+	/**
+	 * Finds the slot which contains the entry with the given key id, or the empty slot where it should be added
+	 */
+	private int findSlot(int keyId) {
+		int mask = slots.length - 1;
+		int slot = mix(keyId) & mask;
+
+		while (slots[slot] != 0 && keyIds[slots[slot] - 1] != keyId) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void grow() {
+		int capacity = keyIds.length * 2;
+		keyIds = Arrays.copyOf(keyIds, capacity);
+		mostSigBits = Arrays.copyOf(mostSigBits, capacity);
+		leastSigBits = Arrays.copyOf(leastSigBits, capacity);
+		formats = Arrays.copyOf(formats, capacity);
+		if (nonCanonical != null) {
+			nonCanonical = Arrays.copyOf(nonCanonical, capacity);
+		}
+	}
+
+	private void rehash(int capacity) {
+		slots = new int[capacity];
+		int mask = capacity - 1;
+
+		for (int position = 0; position < size; position++) {
+			int slot = mix(keyIds[position]) & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = position + 1;
+		}
+	}
+
+	private void addToUuidIndex(int position) {
+		if ((uuidSlotsUsed + 1) * 2 > uuidSlots.length) {
+			// Rehashing indexes every current entry, including this one
+			rehashUuids(uuidSlots.length * 2);
+			return;
+		}
+
+		int mask = uuidSlots.length - 1;
+		int slot = uuidHash(position) & mask;
+		while (uuidSlots[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		uuidSlots[slot] = position + 1;
+		uuidSlotsUsed++;
+	}
+
+	/**
+	 * Builds the UUID index if another thread hasn't already
+	 */
+	private synchronized int[] buildUuidIndex() {
+		if (uuidSlots == null) {
+			rehashUuids(slots.length);
+		}
+		return uuidSlots;
+	}
+
+	private void rehashUuids(int capacity) {
+		while (size * 2 > capacity) {
+			capacity *= 2;
+		}
+		int[] index = new int[capacity];
+		int mask = capacity - 1;
+
+		for (int position = 0; position < size; position++) {
+			int slot = uuidHash(position) & mask;
+			while (index[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			index[slot] = position + 1;
+		}
+
+		// Only publish the index once it's complete
+		uuidSlotsUsed = size;
+		uuidSlots = index;
+	}
+
+	private int uuidHash(int position) {
+		if (formats[position] == NON_CANONICAL) {
+			return mix(nonCanonical[position].hashCode());
+		}
+		return hashBits(mostSigBits[position], leastSigBits[position]);
+	}
+
+	private static int hashBits(long most, long least) {
+		long bits = most ^ least;
+		return mix((int) (bits ^ (bits >>> 32)));
+	}
+
+	private static int mix(int value) {
+		int hash = value * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+}
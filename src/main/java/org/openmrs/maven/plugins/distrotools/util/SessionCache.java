@@ -0,0 +1,101 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.util;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Cache of values shared by all goal executions in one build, e.g. by every module of a reactor build. Caches are
+ * weakly keyed by a build object such as the Maven execution request, so they are discarded along with the build.
+ * Cached values are shared, so shouldn't be modified after they're loaded. Safe for use by multiple threads.
+ */
+public class SessionCache {
+
+	private static final Map<Object, SessionCache> CACHES = new WeakHashMap<Object, SessionCache>();
+
+	private final ConcurrentMap<String, FutureTask<Object>> values = new ConcurrentHashMap<String, FutureTask<Object>>();
+
+	private final FileHashIndex fileHashes = new FileHashIndex();
+
+	/**
+	 * Gets the cache for the given build
+	 * @param build the build object, which should be the same for every goal execution (null for a cache which isn't
+	 *              shared)
+	 * @return the cache
+	 */
+	public static SessionCache forBuild(Object build) {
+		if (build == null) {
+			return new SessionCache();
+		}
+
+		synchronized (CACHES) {
+			SessionCache cache = CACHES.get(build);
+			if (cache == null) {
+				cache = new SessionCache();
+				CACHES.put(build, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Gets a cached value, loading it if necessary. If several goal executions need the same value at the same time,
+	 * e.g. in a parallel build, one loads it while the others wait for it. Failed loads aren't cached.
+	 * @param key the key
+	 * @param loader the loader
+	 * @return the value
+	 * @throws Exception the exception thrown by the loader
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(String key, Callable<T> loader) throws Exception {
+		FutureTask<Object> task = new FutureTask<Object>((Callable<Object>) loader);
+		FutureTask<Object> existing = values.putIfAbsent(key, task);
+		if (existing == null) {
+			task.run();
+			existing = task;
+		}
+
+		try {
+			return (T) existing.get();
+		}
+		catch (ExecutionException ex) {
+			values.remove(key, existing);
+			throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+		}
+	}
+
+	/**
+	 * Checks whether a value has been loaded or is being loaded
+	 * @param key the key
+	 * @return true if it has
+	 */
+	public boolean contains(String key) {
+		return values.containsKey(key);
+	}
+
+	/**
+	 * Gets the index of file content hashes
+	 * @return the file hash index
+	 */
+	public FileHashIndex getFileHashes() {
+		return fileHashes;
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Template for a generated source file, compiled into alternating literal and placeholder segments so that rendering
+ * is a single pass over the segments. Placeholders are upper case names in braces, e.g. {PACKAGE} or {CLASS_BODY}.
+ * Placeholders without a value are rendered as they appear in the template. Immutable and so safe for use by multiple
+ * threads.
+ */
+public class SourceTemplate {
+
+	/**
+	 * A placeholder value which is rendered directly to the output
+	 */
+	public interface Section {
+
+		/**
+		 * Renders the section
+		 * @param out the output
+		 */
+		void render(Appendable out) throws IOException;
+	}
+
+	// Literal segments, with one more than there are placeholders
+	private final String[] literals;
+
+	private final String[] placeholders;
+
+	private SourceTemplate(String[] literals, String[] placeholders) {
+		this.literals = literals;
+		this.placeholders = placeholders;
+	}
+
+	/**
+	 * Compiles a template
+	 * @param text the template text
+	 * @return the template
+	 */
+	public static SourceTemplate compile(String text) {
+		List<String> literals = new ArrayList<String>();
+		List<String> placeholders = new ArrayList<String>();
+		int literalStart = 0;
+
+		for (int open = text.indexOf('{'); open >= 0; open = text.indexOf('{', open + 1)) {
+			int close = open + 1;
+			while (close < text.length() && isNameChar(text.charAt(close))) {
+				close++;
+			}
+			boolean named = close > open + 1 && text.charAt(open + 1) >= 'A' && text.charAt(open + 1) <= 'Z';
+			if (named && close < text.length() && text.charAt(close) == '}') {
+				literals.add(text.substring(literalStart, open));
+				placeholders.add(text.substring(open + 1, close));
+				literalStart = close + 1;
+				open = close;
+			}
+		}
+		literals.add(text.substring(literalStart));
+
+		return new SourceTemplate(literals.toArray(new String[literals.size()]), placeholders.toArray(new String[placeholders.size()]));
+	}
+
+	/**
+	 * Gets the names of the placeholders in this template
+	 * @return the placeholder names, in order of first appearance
+	 */
+	public Set<String> getPlaceholders() {
+		Set<String> names = new LinkedHashSet<String>();
+		Collections.addAll(names, placeholders);
+		return names;
+	}
+
+	/**
+	 * Renders this template
+	 * @param out the output
+	 * @param values the placeholder values, which are either sections or objects rendered as strings
+	 */
+	public void render(Appendable out, Map<String, ?> values) throws IOException {
+		for (int s = 0; s < placeholders.length; s++) {
+			out.append(literals[s]);
+
+			Object value = values.get(placeholders[s]);
+			if (value instanceof Section) {
+				((Section) value).render(out);
+			}
+			else if (value != null) {
+				out.append(value.toString());
+			}
+			else {
+				out.append('{').append(placeholders[s]).append('}');
+			}
+		}
+		out.append(literals[placeholders.length]);
+	}
+
+	/**
+	 * Renders this template to a string
+	 * @param values the placeholder values
+	 * @return the rendered string
+	 */
+	public String render(Map<String, ?> values) {
+		StringBuilder sb = new StringBuilder();
+		try {
+			render(sb, values);
+		}
+		catch (IOException ex) {
+			throw new IllegalStateException("Unable to render template", ex);
+		}
+		return sb.toString();
+	}
+
+	private static boolean isNameChar(char ch) {
+		return (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9') || ch == '_';
+	}
+}
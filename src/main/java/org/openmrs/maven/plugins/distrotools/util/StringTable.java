@@ -0,0 +1,175 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.util;
+
+import java.util.Arrays;
+
+/**
+ * Append-only table of distinct strings, each identified by an integer id. All characters are stored in a single
+ * array so a table of many short strings costs a few bytes per string rather than two objects each. Strings are
+ * only created again when they're read with {@link #get(int)}. Not safe for use by multiple threads.
+ */
+public class StringTable {
+
+	private char[] chars = new char[256];
+
+	private int length;
+
+	// Offsets of each string in chars, with the end offset of the last string at offsets[size]
+	private int[] offsets = new int[17];
+
+	private int size;
+
+	// Open addressing index of string ids plus one, with zero meaning an empty slot
+	private int[] slots = new int[32];
+
+	/**
+	 * Gets the id of the given string, adding it to the table if necessary
+	 * @param string the string
+	 * @return the id
+	 */
+	public int add(String string) {
+		int slot = findSlot(string, hash(string));
+		if (slots[slot] != 0) {
+			return slots[slot] - 1;
+		}
+
+		int stringLength = string.length();
+		if (length + stringLength > chars.length) {
+			chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + stringLength));
+		}
+		if (size + 2 > offsets.length) {
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		}
+
+		string.getChars(0, stringLength, chars, length);
+		length += stringLength;
+		int id = size++;
+		offsets[size] = length;
+		slots[slot] = id + 1;
+
+		if (size * 2 > slots.length) {
+			rehash(slots.length * 2);
+		}
+		return id;
+	}
+
+	/**
+	 * Gets the id of the given string
+	 * @param string the string
+	 * @return the id or -1 if the string isn't in the table
+	 */
+	public int find(String string) {
+		return slots[findSlot(string, hash(string))] - 1;
+	}
+
+	/**
+	 * Gets the string with the given id
+	 * @param id the id
+	 * @return the string
+	 */
+	public String get(int id) {
+		return new String(chars, offsets[id], offsets[id + 1] - offsets[id]);
+	}
+
+	/**
+	 * Gets the number of strings in the table
+	 * @return the number of strings
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Estimates the memory used by this table's arrays. Unlike measuring the heap, this is deterministic and doesn't
+	 * depend on the JVM or garbage collector.
+	 * @return the estimated number of bytes
+	 */
+	public long estimateMemory() {
+		return arrayBytes(chars.length, 2) + arrayBytes(offsets.length, 4) + arrayBytes(slots.length, 4);
+	}
+
+	/**
+	 * Estimates the memory used by an array, assuming a 16 byte header and 8 byte alignment
+	 * @param length the array length
+	 * @param elementBytes the size of each element (4 for references)
+	 * @return the estimated number of bytes
+	 */
+	protected static long arrayBytes(int length, int elementBytes) {
+		return (16L + (long) length * elementBytes + 7) & ~7L;
+	}
+
+	/**
+	 * Finds the slot which contains the given string, or the empty slot where it should be added
+	 */
+	private int findSlot(String string, int hash) {
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+
+		while (slots[slot] != 0 && !matches(slots[slot] - 1, string)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private boolean matches(int id, String string) {
+		int start = offsets[id];
+		if (offsets[id + 1] - start != string.length()) {
+			return false;
+		}
+		for (int c = 0; c < string.length(); c++) {
+			if (chars[start + c] != string.charAt(c)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rehash(int capacity) {
+		slots = new int[capacity];
+		int mask = capacity - 1;
+
+		for (int id = 0; id < size; id++) {
+			int slot = mix(hash(chars, offsets[id], offsets[id + 1])) & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = id + 1;
+		}
+	}
+
+	private static int hash(String string) {
+		return mix(string.hashCode());
+	}
+
+	/**
+	 * Computes the same hash as {@link String#hashCode()} for a range of characters
+	 */
+	private static int hash(char[] chars, int start, int end) {
+		int hash = 0;
+		for (int c = start; c < end; c++) {
+			hash = 31 * hash + chars[c];
+		}
+		return hash;
+	}
+
+	/**
+	 * Spreads the bits of a hash code, as String hash codes of similar strings only differ in their low bits
+	 */
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+}
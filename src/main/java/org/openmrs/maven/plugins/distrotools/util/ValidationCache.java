@@ -0,0 +1,180 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.util;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent cache of validation results keyed by file path and content hash. The whole cache is discarded if its
+ * version (e.g. a hash of the schema and the plugin version) differs from the one it was saved with. Safe for use by
+ * multiple threads.
+ */
+public class ValidationCache {
+
+	private static final String VERSION_KEY = "version";
+
+	private static final String ENTRY_PREFIX = "file:";
+
+	private static final String VALID = "valid";
+
+	private final String version;
+
+	private final Map<String, Entry> previous = new ConcurrentHashMap<String, Entry>();
+
+	private final Map<String, Entry> current = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * Creates an empty cache
+	 * @param version the cache version
+	 */
+	public ValidationCache(String version) {
+		this.version = version;
+	}
+
+	/**
+	 * Loads a cache from the given file. If the file doesn't exist or was saved with a different version, then an empty
+	 * cache is returned.
+	 * @param file the cache file
+	 * @param version the cache version
+	 * @return the cache
+	 */
+	public static ValidationCache load(File file, String version) throws IOException {
+		ValidationCache cache = new ValidationCache(version);
+
+		if (file.exists()) {
+			Properties properties = new Properties();
+			InputStream in = new FileInputStream(file);
+			try {
+				properties.load(in);
+			}
+			finally {
+				IOUtils.closeQuietly(in);
+			}
+
+			if (version.equals(properties.getProperty(VERSION_KEY))) {
+				for (String name : properties.stringPropertyNames()) {
+					if (name.startsWith(ENTRY_PREFIX)) {
+						Entry entry = Entry.parse(properties.getProperty(name));
+						if (entry != null) {
+							cache.previous.put(name.substring(ENTRY_PREFIX.length()), entry);
+						}
+					}
+				}
+			}
+		}
+
+		return cache;
+	}
+
+	/**
+	 * Looks up the cached result for the given file. A hit is carried over to the next saved version of the cache.
+	 * @param path the file path
+	 * @param hash the current content hash of the file
+	 * @return the cached entry or null if the file is new or has changed
+	 */
+	public Entry lookup(String path, String hash) {
+		Entry entry = previous.get(path);
+		if (entry != null && entry.getHash().equals(hash)) {
+			current.put(path, entry);
+			return entry;
+		}
+		return null;
+	}
+
+	/**
+	 * Records a validation result
+	 * @param path the file path
+	 * @param hash the content hash of the file
+	 * @param error the validation error message (null if the file is valid)
+	 */
+	public void put(String path, String hash, String error) {
+		current.put(path, new Entry(hash, error));
+	}
+
+	/**
+	 * Saves this cache to the given file. Only entries looked up or recorded since this cache was loaded are saved.
+	 * @param file the cache file
+	 */
+	public void save(File file) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(VERSION_KEY, version);
+		for (Map.Entry<String, Entry> entry : new TreeMap<String, Entry>(current).entrySet()) {
+			properties.setProperty(ENTRY_PREFIX + entry.getKey(), entry.getValue().format());
+		}
+
+		if (file.getParentFile() != null && !file.getParentFile().exists()) {
+			file.getParentFile().mkdirs();
+		}
+
+		OutputStream out = new FileOutputStream(file);
+		try {
+			properties.store(out, "Distro tools validation cache. DO NOT edit directly.");
+		}
+		finally {
+			IOUtils.closeQuietly(out);
+		}
+	}
+
+	/**
+	 * A cached validation result
+	 */
+	public static class Entry {
+
+		private final String hash;
+
+		private final String error;
+
+		public Entry(String hash, String error) {
+			this.hash = hash;
+			this.error = error;
+		}
+
+		public String getHash() {
+			return hash;
+		}
+
+		public boolean isValid() {
+			return error == null;
+		}
+
+		public String getError() {
+			return error;
+		}
+
+		protected String format() {
+			return hash + " " + (error != null ? error : VALID);
+		}
+
+		protected static Entry parse(String value) {
+			int separator = value.indexOf(' ');
+			if (separator < 0) {
+				return null;
+			}
+			String result = value.substring(separator + 1);
+			return new Entry(value.substring(0, separator), VALID.equals(result) ? null : result);
+		}
+	}
+}
@@ -14,7 +14,7 @@
 
 package org.openmrs.maven.plugins.distrotools.util;
 
-import org.apache.maven.plugin.logging.Log;
+import org.apache.commons.io.IOUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -41,41 +41,144 @@ import java.io.InputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- * XML utility methods
+ * XML utility methods. Compiled schemas and configured factories are cached for the lifetime of the plugin's class
+ * loader, which Maven shares between all modules of a reactor build.
  */
 public class XmlUtils {
 
+	// Key used for the factory of builders without a schema
+	private static final String NO_SCHEMA = "";
+
+	private static final String CDATA_START = "<![CDATA[";
+
+	private static final String CDATA_END = "]]>";
+
+	private static final ConcurrentMap<String, Schema> schemas = new ConcurrentHashMap<String, Schema>();
+
+	private static final ConcurrentMap<String, DocumentBuilderFactory> builderFactories = new ConcurrentHashMap<String, DocumentBuilderFactory>();
+
+	private static volatile TransformerFactory transformerFactory;
+
+	private static final ThreadLocal<Map<String, DocumentBuilder>> threadBuilders = new ThreadLocal<Map<String, DocumentBuilder>>() {
+		@Override
+		protected Map<String, DocumentBuilder> initialValue() {
+			return new HashMap<String, DocumentBuilder>();
+		}
+	};
+
+	private static final ThreadLocal<Transformer> threadTransformers = new ThreadLocal<Transformer>();
+
+	/**
+	 * Gets the compiled schema from the given classpath resource. Schemas are compiled once and then cached. Schema
+	 * objects are thread-safe.
+	 * @param schemaResource the schema resource
+	 * @return the schema
+	 */
+	public static Schema getSchema(String schemaResource) throws SAXException {
+		Schema schema = schemas.get(schemaResource);
+		if (schema == null) {
+			InputStream in = XmlUtils.class.getClassLoader().getResourceAsStream(schemaResource);
+			if (in == null) {
+				throw new SAXException("Schema resource " + schemaResource + " not found");
+			}
+			try {
+				SchemaFactory schemaFactory = SchemaFactory.newInstance("http://www.w3.org/2001/XMLSchema");
+				schema = schemaFactory.newSchema(new StreamSource(in));
+			}
+			finally {
+				IOUtils.closeQuietly(in);
+			}
+
+			Schema existing = schemas.putIfAbsent(schemaResource, schema);
+			if (existing != null) {
+				schema = existing;
+			}
+		}
+		return schema;
+	}
+
 	/**
 	 * Creates a new document builder
 	 * @param schemaResource the schema resource (may be null)
 	 * @return the builder
 	 */
 	public static DocumentBuilder createBuilder(String schemaResource) throws ParserConfigurationException, SAXException {
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		DocumentBuilderFactory factory = getBuilderFactory(schemaResource);
 
-		if (schemaResource != null) {
-			SchemaFactory schemaFactory = SchemaFactory.newInstance("http://www.w3.org/2001/XMLSchema");
-			InputStream in = XmlUtils.class.getClassLoader().getResourceAsStream(schemaResource);
-			Schema schema = schemaFactory.newSchema(new StreamSource(in));
-			factory.setSchema(schema);
-			factory.setValidating(false);
-			factory.setNamespaceAware(true);
+		// Factories aren't guaranteed to be thread-safe
+		DocumentBuilder builder;
+		synchronized (factory) {
+			builder = factory.newDocumentBuilder();
 		}
-
-		DocumentBuilder builder = factory.newDocumentBuilder();
 		builder.setErrorHandler(new SimpleErrorHandler());
 		return builder;
 	}
 
+	/**
+	 * Gets a document builder for the current thread. The builder is created on the first call from each thread and
+	 * then reused, so it must not be shared with other threads.
+	 * @param schemaResource the schema resource (may be null)
+	 * @return the builder
+	 */
+	public static DocumentBuilder getBuilder(String schemaResource) throws ParserConfigurationException, SAXException {
+		Map<String, DocumentBuilder> builders = threadBuilders.get();
+		String key = schemaResource != null ? schemaResource : NO_SCHEMA;
+		DocumentBuilder builder = builders.get(key);
+		if (builder == null) {
+			builder = createBuilder(schemaResource);
+			builders.put(key, builder);
+		}
+		return builder;
+	}
+
+	/**
+	 * Gets the cached document builder factory for the given schema resource
+	 * @param schemaResource the schema resource (may be null)
+	 * @return the factory
+	 */
+	protected static DocumentBuilderFactory getBuilderFactory(String schemaResource) throws SAXException {
+		String key = schemaResource != null ? schemaResource : NO_SCHEMA;
+		DocumentBuilderFactory factory = builderFactories.get(key);
+		if (factory == null) {
+			factory = DocumentBuilderFactory.newInstance();
+
+			if (schemaResource != null) {
+				factory.setSchema(getSchema(schemaResource));
+				factory.setValidating(false);
+				factory.setNamespaceAware(true);
+			}
+
+			DocumentBuilderFactory existing = builderFactories.putIfAbsent(key, factory);
+			if (existing != null) {
+				factory = existing;
+			}
+		}
+		return factory;
+	}
+
 	/**
 	 * Creates a new document transformer
 	 * @return the transformer
 	 */
 	public static Transformer createTransformer() throws TransformerConfigurationException {
-		Transformer transformer = TransformerFactory.newInstance().newTransformer();
+		TransformerFactory factory = transformerFactory;
+		if (factory == null) {
+			factory = TransformerFactory.newInstance();
+			transformerFactory = factory;
+		}
+
+		// Factories aren't guaranteed to be thread-safe
+		Transformer transformer;
+		synchronized (factory) {
+			transformer = factory.newTransformer();
+		}
 		transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
 		transformer.setOutputProperty(OutputKeys.INDENT, "yes");
 		transformer.setOutputProperty(OutputKeys.METHOD, "xml");
@@ -83,6 +186,20 @@ public class XmlUtils {
 		return transformer;
 	}
 
+	/**
+	 * Gets a document transformer for the current thread. The transformer is created on the first call from each thread
+	 * and then reused, so it must not be shared with other threads.
+	 * @return the transformer
+	 */
+	public static Transformer getTransformer() throws TransformerConfigurationException {
+		Transformer transformer = threadTransformers.get();
+		if (transformer == null) {
+			transformer = createTransformer();
+			threadTransformers.set(transformer);
+		}
+		return transformer;
+	}
+
 	/**
 	 * Converts an XML string to a DOM document
 	 * @param xml the xml string
@@ -93,6 +210,16 @@ public class XmlUtils {
 		return documentBuilder.parse(new InputSource(new StringReader(xml)));
 	}
 
+	/**
+	 * Parses XML into a document object without copying it into a string
+	 * @param xml the XML, e.g. a string builder or char buffer
+	 * @param documentBuilder the DOM document builder
+	 * @return the DOM document
+	 */
+	public static Document stringToDocument(CharSequence xml, DocumentBuilder documentBuilder) throws SAXException, IOException {
+		return documentBuilder.parse(new InputSource(new CharSequenceReader(xml)));
+	}
+
 	/**
 	 * Converts a document object to an xml string
 	 * @param document the document to convert
@@ -142,6 +269,118 @@ public class XmlUtils {
 		return found;
 	}
 
+	/**
+	 * Strips comments from the given XML in a single pass, copying the text between comments to the output in runs.
+	 * Comments may span multiple lines, may have whitespace between the &lt;! and -- or the -- and &gt; (as the regular
+	 * expression this replaced did) and are left alone inside CDATA sections. An unterminated comment is left in place
+	 * for the parser to report. The line breaks of each stripped comment are kept, so that line numbers reported when
+	 * parsing the output match the original XML.
+	 * @param xml the XML, e.g. a string or a decoded char buffer
+	 * @param out the output
+	 */
+	public static void stripComments(CharSequence xml, StringBuilder out) {
+		int length = xml.length();
+		int copyFrom = 0;
+		int c = 0;
+
+		while (c < length) {
+			if (xml.charAt(c) != '<' || c + 1 >= length || xml.charAt(c + 1) != '!') {
+				c++;
+				continue;
+			}
+
+			if (startsWith(xml, c, CDATA_START)) {
+				int end = indexOf(xml, CDATA_END, c + CDATA_START.length());
+				c = end >= 0 ? end + CDATA_END.length() : length;
+				continue;
+			}
+
+			int open = skipWhitespace(xml, c + 2);
+			if (!startsWith(xml, open, "--")) {
+				c += 2;
+				continue;
+			}
+
+			// If this comment is unterminated then so is any later one, so there's nothing more to strip
+			int end = findCommentEnd(xml, open + 2);
+			if (end < 0) {
+				break;
+			}
+			out.append(xml, copyFrom, c);
+			appendLineBreaks(xml, c, end, out);
+			copyFrom = end;
+			c = end;
+		}
+		out.append(xml, copyFrom, length);
+	}
+
+	/**
+	 * Appends the line break characters in the given range of the XML
+	 */
+	private static void appendLineBreaks(CharSequence xml, int start, int end, StringBuilder out) {
+		for (int c = start; c < end; c++) {
+			char ch = xml.charAt(c);
+			if (ch == '\n' || ch == '\r') {
+				out.append(ch);
+			}
+		}
+	}
+
+	/**
+	 * Strips comments from the given XML
+	 * @param xml the XML
+	 * @return the XML without comments
+	 * @see #stripComments(CharSequence, StringBuilder)
+	 */
+	public static String stripComments(CharSequence xml) {
+		StringBuilder out = new StringBuilder(xml.length());
+		stripComments(xml, out);
+		return out.toString();
+	}
+
+	/**
+	 * Finds the end of a comment, i.e. -- followed by optional whitespace and &gt;
+	 * @return the index after the end or -1 if the comment is unterminated
+	 */
+	private static int findCommentEnd(CharSequence xml, int from) {
+		for (int dashes = indexOf(xml, "--", from); dashes >= 0; dashes = indexOf(xml, "--", dashes + 1)) {
+			int close = skipWhitespace(xml, dashes + 2);
+			if (close < xml.length() && xml.charAt(close) == '>') {
+				return close + 1;
+			}
+		}
+		return -1;
+	}
+
+	private static int skipWhitespace(CharSequence xml, int from) {
+		while (from < xml.length() && Character.isWhitespace(xml.charAt(from))) {
+			from++;
+		}
+		return from;
+	}
+
+	private static boolean startsWith(CharSequence xml, int from, String prefix) {
+		if (from + prefix.length() > xml.length()) {
+			return false;
+		}
+		for (int c = 0; c < prefix.length(); c++) {
+			if (xml.charAt(from + c) != prefix.charAt(c)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int indexOf(CharSequence xml, String target, int from) {
+		char first = target.charAt(0);
+		for (int c = from; c <= xml.length() - target.length(); c++) {
+			if (xml.charAt(c) == first && startsWith(xml, c, target)) {
+				return c;
+			}
+		}
+		return -1;
+	}
+
 	/**
 	 * Finds the attribute value with the given name
 	 * @param node the node
@@ -0,0 +1,96 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link FormReferenceChecker}
+ */
+public class FormReferenceCheckerTest {
+
+	private FormReferenceChecker checker;
+
+	/**
+	 * Setup each test
+	 */
+	@Before
+	public void setup() {
+		MetadataConfig config = new MetadataConfig();
+		config.addReference("Concept", "YES", "1065AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA");
+		config.addReference("Concept", "NO", "1066AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA");
+		config.addReference("EncounterType", "VISIT", "b24b4e4a-1b3c-4e4c-9f0a-6f2c2d1a0e11");
+		checker = new FormReferenceChecker(config);
+	}
+
+	/**
+	 * @see FormReferenceChecker#check(java.io.InputStream, String)
+	 */
+	@Test
+	public void check_shouldAcceptKnownReferences() throws Exception {
+		List<String> problems = check("<htmlform>\n" +
+				"<macros>\nno=1066AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA\n</macros>\n" +
+				"<encounterType default=\"b24b4e4a-1b3c-4e4c-9f0a-6f2c2d1a0e11\" />\n" +
+				"<obs conceptId=\"1065AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA\" answerConceptIds=\"$no, ${metadata.concept.YES}\" />\n" +
+				"<obs conceptId=\"5089\" answerConceptId=\"CIEL:1065\" />\n" +
+				"</htmlform>");
+		Assert.assertThat(problems, empty());
+	}
+
+	/**
+	 * @see FormReferenceChecker#check(java.io.InputStream, String)
+	 */
+	@Test
+	public void check_shouldReportUnknownReferencesWithLocations() throws Exception {
+		List<String> problems = check("<htmlform>\n" +
+				"<obs conceptId=\"1067AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA\" answerConceptIds=\"$maybe,${metadata.concept.MAYBE}\" />\n" +
+				"<macros>maybe=1068AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA</macros>\n" +
+				"</htmlform>");
+		Assert.assertThat(problems, hasSize(3));
+		Assert.assertThat(problems.get(0), allOf(startsWith("Unknown reference 1067AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA in attribute conceptId"), containsString("at line 2,")));
+		Assert.assertThat(problems.get(1), startsWith("Unknown reference 1068AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA (from $maybe) in attribute answerConceptIds"));
+		Assert.assertThat(problems.get(2), startsWith("Unknown reference ${metadata.concept.MAYBE} in attribute answerConceptIds"));
+	}
+
+	/**
+	 * @see FormReferenceChecker#check(java.io.InputStream, String)
+	 */
+	@Test
+	public void check_shouldReportReferencesToTheWrongType() throws Exception {
+		List<String> problems = check("<htmlform>\n" +
+				"<macros>visit=b24b4e4a-1b3c-4e4c-9f0a-6f2c2d1a0e11</macros>\n" +
+				"<encounterType default=\"1065AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA\" types=\"${metadata.concept.NO}\" />\n" +
+				"<obs conceptId=\"b24b4e4a-1b3c-4e4c-9f0a-6f2c2d1a0e11\" answerConceptIds=\"$visit,${metadata.encountertype.VISIT}\" />\n" +
+				"</htmlform>");
+		Assert.assertThat(problems, contains(
+				startsWith("Reference 1065AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA is Concept.YES rather than a EncounterType in attribute default at line 3,"),
+				startsWith("Reference ${metadata.concept.NO} is Concept.NO rather than a EncounterType in attribute types at line 3,"),
+				startsWith("Reference b24b4e4a-1b3c-4e4c-9f0a-6f2c2d1a0e11 is EncounterType.VISIT rather than a Concept in attribute conceptId at line 4,"),
+				startsWith("Reference b24b4e4a-1b3c-4e4c-9f0a-6f2c2d1a0e11 (from $visit) is EncounterType.VISIT rather than a Concept in attribute answerConceptIds"),
+				startsWith("Reference ${metadata.encountertype.VISIT} is EncounterType.VISIT rather than a Concept in attribute answerConceptIds")
+		));
+	}
+
+	private List<String> check(String xml) throws Exception {
+		return checker.check(new ByteArrayInputStream(xml.getBytes("UTF-8")), "form.html");
+	}
+}
@@ -20,6 +20,7 @@ import org.junit.Test;
 
 import java.util.Map;
 import java.util.Properties;
+import java.util.UUID;
 
 import static org.hamcrest.Matchers.*;
 
@@ -71,4 +72,51 @@ public class MetadataConfigTest {
 		Assert.assertThat(properties, hasEntry((Object) "test.concept.YES", (Object) "CCCC"));
 		Assert.assertThat(properties, hasEntry((Object) "test.encountertype.INIT", (Object) "DDDD"));
 	}
-}
\ No newline at end of file
+
+	/**
+	 * @see MetadataConfig#findReference(String)
+	 */
+	@Test
+	public void findReference_shouldFindTypeAndKeyOfUuid() {
+		MetadataConfig.Reference reference = config.findReference("BBBB");
+		Assert.assertThat(reference.getType(), is("Program"));
+		Assert.assertThat(reference.getKey(), is("TB"));
+		Assert.assertThat(config.findReference("EEEE"), nullValue());
+
+		// Index is maintained after it's built
+		config.addReference("Program", "TB", "EEEE");
+		Assert.assertThat(config.findReference("BBBB"), nullValue());
+		Assert.assertThat(config.findReference("EEEE").getKey(), is("TB"));
+	}
+
+	/**
+	 * @see MetadataConfig#estimateMemory()
+	 */
+	@Test
+	public void addReference_shouldUseLessThanHalfTheMemoryOfLinkedHashMaps() {
+		final int count = 200000;
+
+		MetadataConfig compact = new MetadataConfig();
+		for (int r = 0; r < count; r++) {
+			compact.addReference("Type" + (r % 4), "REFERENCE_" + r, UUID.randomUUID().toString());
+		}
+		Assert.assertThat(compact.getReferencesByType("Type0").size(), is(count / 4));
+
+		// Estimate LinkedHashMaps the same way, i.e. 4 byte references, 16 byte array headers and 8 byte alignment. Each
+		// entry is a 40 byte object plus its key and UUID strings, each a 24 byte object plus a UTF-16 character array.
+		long mapsBytes = 0;
+		for (int t = 0; t < 4; t++) {
+			int capacity = Integer.highestOneBit((int) Math.ceil(count / 4 / 0.75) - 1) * 2;
+			mapsBytes += arrayBytes(capacity, 4);
+		}
+		for (int r = 0; r < count; r++) {
+			mapsBytes += 40 + 24 + arrayBytes(("REFERENCE_" + r).length(), 2) + 24 + arrayBytes(36, 2);
+		}
+
+		Assert.assertThat(compact.estimateMemory(), lessThan(mapsBytes / 2));
+	}
+
+	private static long arrayBytes(int length, int elementBytes) {
+		return (16L + (long) length * elementBytes + 7) & ~7L;
+	}
+}
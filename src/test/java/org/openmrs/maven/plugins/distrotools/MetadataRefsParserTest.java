@@ -0,0 +1,102 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link MetadataRefsParser}
+ */
+public class MetadataRefsParserTest {
+
+	private MetadataRefsParser parser;
+
+	private MetadataConfig config;
+
+	/**
+	 * Setup each test
+	 */
+	@Before
+	public void setup() {
+		parser = new MetadataRefsParser();
+		config = new MetadataConfig();
+	}
+
+	/**
+	 * @see MetadataRefsParser#parse(java.io.InputStream, String, MetadataConfig)
+	 */
+	@Test
+	public void parse_shouldAddReferencesToConfig() throws Exception {
+		InputStream in = getClass().getClassLoader().getResourceAsStream("test-metadata.xml");
+		Assert.assertThat(parser.parse(in, "test-metadata.xml", config), is(2));
+		Assert.assertThat(config.getConfiguredTypes(), contains("Concept"));
+		Assert.assertThat(config.getReferencesByType("Concept"), hasEntry("YES", "1065AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA"));
+		Assert.assertThat(config.getReferencesByType("Concept"), hasEntry("NO", "1066AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA"));
+	}
+
+	/**
+	 * @see MetadataRefsParser#parse(java.io.InputStream, String, MetadataConfig)
+	 */
+	@Test
+	public void parse_shouldAllowEmptyRefsAndRefText() throws Exception {
+		Assert.assertThat(parse("<refs type=\"Program\" />"), is(0));
+		Assert.assertThat(parse("<refs type=\"Program\"><ref key=\"HIV\" uuid=\"AAAA\">HIV program</ref></refs>"), is(1));
+		Assert.assertThat(config.getReferencesByType("Program"), hasEntry("HIV", "AAAA"));
+	}
+
+	/**
+	 * @see MetadataRefsParser#parse(java.io.InputStream, String, MetadataConfig)
+	 */
+	@Test(expected = XMLStreamException.class)
+	public void parse_shouldFailIfTypeIsMissing() throws Exception {
+		parse("<refs><ref key=\"YES\" uuid=\"AAAA\" /></refs>");
+	}
+
+	/**
+	 * @see MetadataRefsParser#parse(java.io.InputStream, String, MetadataConfig)
+	 */
+	@Test(expected = XMLStreamException.class)
+	public void parse_shouldFailIfKeyIsMissing() throws Exception {
+		parse("<refs type=\"Concept\"><ref uuid=\"AAAA\" /></refs>");
+	}
+
+	/**
+	 * @see MetadataRefsParser#parse(java.io.InputStream, String, MetadataConfig)
+	 */
+	@Test(expected = XMLStreamException.class)
+	public void parse_shouldFailIfUuidIsMissing() throws Exception {
+		parse("<refs type=\"Concept\"><ref key=\"YES\" /></refs>");
+	}
+
+	/**
+	 * @see MetadataRefsParser#parse(java.io.InputStream, String, MetadataConfig)
+	 */
+	@Test(expected = XMLStreamException.class)
+	public void parse_shouldFailForUnexpectedElements() throws Exception {
+		parse("<refs type=\"Concept\"><item key=\"YES\" uuid=\"AAAA\" /></refs>");
+	}
+
+	private int parse(String xml) throws XMLStreamException {
+		return parser.parse(new ByteArrayInputStream(xml.getBytes()), null, config);
+	}
+}
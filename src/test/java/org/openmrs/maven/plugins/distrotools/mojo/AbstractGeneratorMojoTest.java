@@ -0,0 +1,263 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.mojo;
+
+import org.apache.commons.io.FileUtils;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openmrs.maven.plugins.distrotools.util.BuildManifest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.*;
+import static org.openmrs.maven.plugins.distrotools.mojo.MojoTestUtils.setParameter;
+
+/**
+ * Tests for {@link AbstractGeneratorMojo}
+ */
+public class AbstractGeneratorMojoTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private AbstractGeneratorMojo mojo;
+
+	/**
+	 * Setup each test
+	 */
+	@Before
+	public void setup() throws Exception {
+		mojo = createMojo();
+	}
+
+	/**
+	 * @see AbstractGeneratorMojo#writeOutput(java.io.File, AbstractGeneratorMojo.OutputRenderer)
+	 */
+	@Test
+	public void writeOutput_shouldLeaveOutputAndNoTemporaryFileIfRenderingFails() throws Exception {
+		File output = new File(folder.getRoot(), "Test.java");
+		FileUtils.writeStringToFile(output, "previous");
+
+		try {
+			mojo.writeOutput(output, new AbstractGeneratorMojo.OutputRenderer() {
+				public void render(Writer writer) throws IOException {
+					writer.write("partial");
+					throw new IOException("Render failed");
+				}
+			});
+			Assert.fail("Expected the render error to be thrown");
+		}
+		catch (IOException ex) {
+			Assert.assertThat(ex.getMessage(), is("Render failed"));
+		}
+
+		Assert.assertThat(FileUtils.readFileToString(output), is("previous"));
+		Assert.assertThat(folder.getRoot().list(), arrayContaining("Test.java"));
+	}
+
+	/**
+	 * @see AbstractGeneratorMojo#writeOutput(java.io.File, AbstractGeneratorMojo.OutputRenderer)
+	 */
+	@Test
+	public void writeOutput_shouldNotLeaveTemporaryFileIfReplacingOutputFails() throws Exception {
+		// A non-empty directory can't be replaced by a file
+		File output = folder.newFolder("Test.java");
+		FileUtils.writeStringToFile(new File(output, "other"), "other");
+
+		try {
+			mojo.writeOutput(output, new AbstractGeneratorMojo.OutputRenderer() {
+				public void render(Writer writer) throws IOException {
+					writer.write("content");
+				}
+			});
+			Assert.fail("Expected the output to not be replaceable");
+		}
+		catch (IOException ex) {
+			// Expected
+		}
+
+		Assert.assertThat(folder.getRoot().list(), arrayContaining("Test.java"));
+	}
+
+	/**
+	 * @see AbstractGeneratorMojo#getTemplate(String)
+	 */
+	@Test
+	public void getTemplate_shouldReloadOverridesWhichHaveChanged() throws Exception {
+		File templateDirectory = folder.newFolder("templates");
+		File override = new File(templateDirectory, "Metadata.java.template");
+		mojo.setTemplateDirectory(templateDirectory);
+		Map<String, Object> values = Collections.<String, Object>singletonMap("PACKAGE", "org.test");
+
+		FileUtils.writeStringToFile(override, "package {PACKAGE};");
+		Assert.assertThat(mojo.getTemplate("Metadata.java.template").render(values), is("package org.test;"));
+		Assert.assertThat(mojo.getTemplate("Metadata.java.template"), sameInstance(mojo.getTemplate("Metadata.java.template")));
+
+		FileUtils.writeStringToFile(override, "package {PACKAGE}; // Changed");
+		override.setLastModified(override.lastModified() - 10000);
+		Assert.assertThat(mojo.getTemplate("Metadata.java.template").render(values), is("package org.test; // Changed"));
+
+		override.delete();
+		Assert.assertThat(mojo.getTemplate("Metadata.java.template").render(values), containsString("public class Metadata {"));
+	}
+
+	/**
+	 * @see AbstractGeneratorMojo#getTemplate(String)
+	 */
+	@Test
+	public void getTemplate_shouldFailClearlyIfTemplateDoesNotExist() throws Exception {
+		try {
+			mojo.getTemplate("Missing.java.template");
+			Assert.fail("Expected a missing template to be reported");
+		}
+		catch (IOException ex) {
+			Assert.assertThat(ex.getMessage(), is("Template Missing.java.template not found"));
+		}
+	}
+
+	/**
+	 * @see AbstractDistroToolsMojo#getShared(String, String, java.util.concurrent.Callable)
+	 */
+	@Test
+	public void getShared_shouldRecordCachedPhaseIfValueWasAlreadyLoaded() throws Exception {
+		final AtomicInteger loads = new AtomicInteger();
+		Callable<String> loader = new Callable<String>() {
+			public String call() {
+				return "value" + loads.incrementAndGet();
+			}
+		};
+
+		Assert.assertThat(mojo.getShared("key", "test values", loader), is("value1"));
+		Assert.assertThat(mojo.getShared("key", "test values", loader), is("value1"));
+		Assert.assertThat(mojo.getShared("key", "test values", loader), is("value1"));
+
+		JsonNode report = new ObjectMapper().readTree(mojo.getMetrics().writeReports(folder.getRoot(), 0));
+		Assert.assertThat(report.get("phases").get("cached").get("count").getIntValue(), is(2));
+	}
+
+	/**
+	 * @see AbstractGeneratorMojo#isUpToDate(String, String)
+	 */
+	@Test
+	public void isUpToDate_shouldBeTrueIfDigestMatchesAndOutputsExist() throws Exception {
+		generate(mojo, "digest1");
+
+		Assert.assertThat(createMojo().isUpToDate("test", "digest1"), is(true));
+		Assert.assertThat(manifestFile().exists(), is(true));
+	}
+
+	/**
+	 * @see AbstractGeneratorMojo#isUpToDate(String, String)
+	 */
+	@Test
+	public void isUpToDate_shouldBeFalseAndDeleteManifestIfOutputWasDeleted() throws Exception {
+		generate(mojo, "digest1");
+		new File(folder.getRoot(), "target/generated/Test.java").delete();
+
+		AbstractGeneratorMojo next = createMojo();
+		Assert.assertThat(next.isUpToDate("test", "digest1"), is(false));
+		Assert.assertThat(manifestFile().exists(), is(false));
+		Assert.assertThat(next.getPreviousOutputs(), hasItem(new File(folder.getRoot(), "target/generated/Test.java")));
+	}
+
+	/**
+	 * @see AbstractGeneratorMojo#isUpToDate(String, String)
+	 */
+	@Test
+	public void isUpToDate_shouldBeFalseAndDeleteManifestIfDigestChanged() throws Exception {
+		generate(mojo, "digest1");
+
+		Assert.assertThat(createMojo().isUpToDate("test", "digest2"), is(false));
+		Assert.assertThat(manifestFile().exists(), is(false));
+	}
+
+	/**
+	 * @see AbstractGeneratorMojo#isUpToDate(String, String)
+	 */
+	@Test
+	public void isUpToDate_shouldBeFalseIfSkippingIsDisabled() throws Exception {
+		generate(mojo, "digest1");
+
+		AbstractGeneratorMojo next = createMojo();
+		setParameter(next, "skipIfUpToDate", false);
+		Assert.assertThat(next.isUpToDate("test", "digest1"), is(false));
+		Assert.assertThat(manifestFile().exists(), is(false));
+	}
+
+	/**
+	 * @see AbstractGeneratorMojo#saveManifest(String, String)
+	 */
+	@Test
+	public void saveManifest_shouldRecordOutputsRelativeToProjectDirectory() throws Exception {
+		File outside = File.createTempFile("outside", ".properties");
+		try {
+			write(mojo, outside, "key=value");
+			generate(mojo, "digest1");
+
+			BuildManifest manifest = BuildManifest.load(manifestFile());
+			Assert.assertThat(manifest.getDigest(), is("digest1"));
+			Assert.assertThat(manifest.getOutputs(), containsInAnyOrder("target/generated/Test.java", outside.getCanonicalPath().replace(File.separatorChar, '/')));
+		}
+		finally {
+			outside.delete();
+		}
+	}
+
+	private AbstractGeneratorMojo createMojo() throws Exception {
+		AbstractGeneratorMojo mojo = new AbstractGeneratorMojo() {
+			public void execute() {
+			}
+		};
+		setParameter(mojo, "baseDirectory", folder.getRoot());
+		setParameter(mojo, "manifestDirectory", new File(folder.getRoot(), "target/distrotools"));
+		setParameter(mojo, "skipIfUpToDate", true);
+		return mojo;
+	}
+
+	/**
+	 * Runs a generation which writes one output and saves the manifest, as a goal would
+	 */
+	private void generate(AbstractGeneratorMojo mojo, String digest) throws Exception {
+		Assert.assertThat(mojo.isUpToDate("test", digest), is(false));
+		write(mojo, new File(folder.getRoot(), "target/generated/Test.java"), "class Test {}");
+		mojo.saveManifest("test", digest);
+	}
+
+	/**
+	 * Writes an output file with the given content
+	 */
+	private static void write(AbstractGeneratorMojo mojo, File output, final String content) throws IOException {
+		mojo.writeOutput(output, new AbstractGeneratorMojo.OutputRenderer() {
+			public void render(Writer writer) throws IOException {
+				writer.write(content);
+			}
+		});
+	}
+
+	private File manifestFile() {
+		return new File(folder.getRoot(), "target/distrotools/test.manifest");
+	}
+}
@@ -0,0 +1,216 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.mojo;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openmrs.maven.plugins.distrotools.util.BuildMetrics;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link GenerateConstantsMojo}
+ */
+public class GenerateConstantsMojoTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * @see GenerateConstantsMojo#resolveFilterProperties(java.util.List)
+	 */
+	@Test
+	public void resolveFilterProperties_shouldResolveReferencesRegardlessOfOrder() throws Exception {
+		Map<String, String> properties = GenerateConstantsMojo.resolveFilterProperties(load(
+				"{ \"Forms\": { \"ALL\": [\"VITALS\", \"Forms.Intake.ADULT\", \"Other.LIST\", \"literal\"], \"VITALS\": \"vitals.xml\"," +
+				"   \"Intake\": { \"ADULT\": \"adult.xml\" } } }",
+				"{ \"Other\": { \"LIST\": [\"A\", \"B\"], \"NESTED\": [\"LIST\"] } }"
+		));
+
+		Assert.assertThat(properties.keySet(), contains("Forms.Intake.ADULT", "Forms.ALL", "Forms.VITALS", "Other.LIST", "Other.NESTED"));
+		Assert.assertThat(properties, hasEntry("Forms.ALL", "vitals.xml,adult.xml,A,B,literal"));
+		Assert.assertThat(properties, hasEntry("Other.NESTED", "A,B"));
+	}
+
+	/**
+	 * @see GenerateConstantsMojo#resolveFilterProperties(java.util.List)
+	 */
+	@Test
+	public void resolveFilterProperties_shouldFailForCycles() throws Exception {
+		try {
+			GenerateConstantsMojo.resolveFilterProperties(load(
+					"{ \"A\": { \"X\": [\"Y\"], \"Y\": [\"B.Z\"] } }",
+					"{ \"B\": { \"Z\": [\"A.X\", \"other\"] } }"
+			));
+			Assert.fail("Expected a cycle to be reported");
+		}
+		catch (MojoFailureException ex) {
+			Assert.assertThat(ex.getMessage(), is("Constants refer to each other in a cycle: A.X -> A.Y -> B.Z -> A.X"));
+		}
+	}
+
+	/**
+	 * @see GenerateConstantsMojo#generateAndAppendClassBody(Appendable, GenerateConstantsMojo.ConstantClass, int, String, java.util.Map)
+	 */
+	@Test
+	public void generateAndAppendClassBody_shouldGenerateTypedConstantsAndArrays() throws Exception {
+		List<GenerateConstantsMojo.ConstantClass> classes = load("{ \"Limits\": {" +
+				" \"MAX\": 5, \"BIG\": 12345678901, \"RATIO\": 0.5, \"ON\": true, \"NAME\": \"x\"," +
+				" \"INTS\": [1, 2], \"LONGS\": [1, 12345678901], \"DOUBLES\": [1, 0.5], \"FLAGS\": [true, false]," +
+				" \"MIXED\": [\"MAX\", \"NAME\", \"other\", 3, true] } }");
+		Map<String, GenerateConstantsMojo.ConstantNode> nodes = GenerateConstantsMojo.resolveConstants(classes);
+
+		StringBuilder sb = new StringBuilder();
+		GenerateConstantsMojo mojo = new GenerateConstantsMojo();
+		mojo.setTypedConstants(true);
+		mojo.generateAndAppendClassBody(sb, classes.get(0), 0, "Limits", nodes);
+
+		Assert.assertThat(sb.toString(), stringContainsInOrder(Arrays.asList(
+				"public static final int MAX = 5;",
+				"public static final long BIG = 12345678901L;",
+				"public static final double RATIO = 0.5;",
+				"public static final boolean ON = true;",
+				"public static final String NAME = \"x\";",
+				"public static final int[] INTS = { 1, 2 };",
+				"public static final long[] LONGS = { 1, 12345678901L };",
+				"public static final double[] DOUBLES = { 1, 0.5 };",
+				"public static final boolean[] FLAGS = { true, false };",
+				"public static final String[] MIXED = { String.valueOf(Limits.MAX), Limits.NAME, \"other\", \"3\", \"true\" };"
+		)));
+		assertCompiles("Limits", sb);
+	}
+
+	/**
+	 * @see GenerateConstantsMojo#generateAndAppendClassBody(Appendable, GenerateConstantsMojo.ConstantClass, int, String, java.util.Map)
+	 */
+	@Test
+	public void generateAndAppendClassBody_shouldGenerateResolvedValuesOfReferencedLists() throws Exception {
+		List<GenerateConstantsMojo.ConstantClass> classes = load("{ \"Limits\": {" +
+				" \"ALL\": [\"OTHER\", \"Limits.Sub.NAMES\", \"MAX\"], \"OTHER\": [1, 2], \"MAX\": 5," +
+				" \"Sub\": { \"NAMES\": [\"a\", \"MAX\"] } } }");
+
+		StringBuilder sb = new StringBuilder();
+		GenerateConstantsMojo mojo = new GenerateConstantsMojo();
+		mojo.setTypedConstants(true);
+		mojo.generateAndAppendClassBody(sb, classes.get(0), 0, "Limits", GenerateConstantsMojo.resolveConstants(classes));
+
+		Assert.assertThat(sb.toString(), stringContainsInOrder(Arrays.asList(
+				"public static final String[] NAMES = { \"a\", String.valueOf(Limits.MAX) };",
+				"public static final String[] ALL = { \"1,2\", \"a,5\", String.valueOf(Limits.MAX) };",
+				"public static final int[] OTHER = { 1, 2 };"
+		)));
+		assertCompiles("Limits", sb);
+	}
+
+	/**
+	 * @see GenerateConstantsMojo#generateAndAppendClassBody(Appendable, GenerateConstantsMojo.ConstantClass, int)
+	 */
+	@Test
+	public void generateAndAppendClassBody_shouldGenerateStringsByDefault() throws Exception {
+		List<GenerateConstantsMojo.ConstantClass> classes = load("{ \"Limits\": { \"MAX\": 5, \"ON\": true, \"INTS\": [\"MAX\", 2] } }");
+
+		StringBuilder sb = new StringBuilder();
+		new GenerateConstantsMojo().generateAndAppendClassBody(sb, classes.get(0), 0);
+
+		Assert.assertThat(sb.toString(), stringContainsInOrder(Arrays.asList(
+				"public static final String MAX = \"5\";",
+				"public static final String ON = \"true\";",
+				"public static final String[] INTS = { Limits.MAX, \"2\" };"
+		)));
+		assertCompiles("Limits", sb);
+	}
+
+	/**
+	 * @see GenerateConstantsMojo#generateAndAppendClassBody(Appendable, GenerateConstantsMojo.ConstantClass, int)
+	 */
+	@Test
+	public void generateAndAppendClassBody_shouldEscapeStringLiterals() throws Exception {
+		List<GenerateConstantsMojo.ConstantClass> classes = load("{ \"Text\": { \"QUOTE\": \"say \\\"hi\\\"\"," +
+				" \"PATH\": \"C:\\\\forms\", \"LINES\": [\"a\\nb\"], \"LIST\": [\"QUOTE\"], \"ALL\": [\"LIST\"] } }");
+
+		StringBuilder sb = new StringBuilder();
+		new GenerateConstantsMojo().generateAndAppendClassBody(sb, classes.get(0), 0);
+
+		Assert.assertThat(sb.toString(), stringContainsInOrder(Arrays.asList(
+				"public static final String QUOTE = \"say \\\"hi\\\"\";",
+				"public static final String PATH = \"C:\\\\forms\";",
+				"public static final String[] LINES = { \"a\\nb\" };",
+				"public static final String[] LIST = { Text.QUOTE };",
+				"public static final String[] ALL = { \"say \\\"hi\\\"\" };"
+		)));
+		assertCompiles("Text", sb);
+	}
+
+	/**
+	 * @see GenerateConstantsMojo#generateAndAppendClassBody(Appendable, GenerateConstantsMojo.ConstantClass, int)
+	 */
+	@Test
+	public void generateAndAppendClassBody_shouldReferToConstantsOfEnclosingClassesInnermostFirst() throws Exception {
+		List<GenerateConstantsMojo.ConstantClass> classes = load("{ \"Top\": { \"A\": \"top\", \"B\": \"b\"," +
+				" \"Sub\": { \"A\": \"sub\", \"L\": [\"A\", \"B\"] }, \"M\": [\"A\"] } }");
+
+		StringBuilder sb = new StringBuilder();
+		new GenerateConstantsMojo().generateAndAppendClassBody(sb, classes.get(0), 0);
+
+		Assert.assertThat(sb.toString(), containsString("public static final String[] L = { Top.Sub.A, Top.B };"));
+		Assert.assertThat(sb.toString(), containsString("public static final String[] M = { Top.A };"));
+		assertCompiles("Top", sb);
+
+		Map<String, String> properties = GenerateConstantsMojo.resolveFilterProperties(classes);
+		Assert.assertThat(properties, hasEntry("Top.Sub.L", "sub,b"));
+		Assert.assertThat(properties, hasEntry("Top.M", "top"));
+	}
+
+	/**
+	 * Asserts that the given class body compiles
+	 */
+	private void assertCompiles(String className, CharSequence classBody) throws Exception {
+		File source = new File(folder.newFolder(), className + ".java");
+		FileUtils.writeStringToFile(source, classBody.toString(), "UTF-8");
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		ByteArrayOutputStream errors = new ByteArrayOutputStream();
+		int result = compiler.run(null, null, errors, "-d", source.getParent(), source.getPath());
+		Assert.assertThat(errors.toString(), result, is(0));
+	}
+
+	/**
+	 * Writes each JSON string to a file and loads the constant classes from them, in order
+	 */
+	private List<GenerateConstantsMojo.ConstantClass> load(String... jsons) throws Exception {
+		List<File> files = new ArrayList<File>();
+		for (int j = 0; j < jsons.length; j++) {
+			File file = folder.newFile(j + ".json");
+			FileUtils.writeStringToFile(file, jsons[j], "UTF-8");
+			files.add(file);
+		}
+		return GenerateConstantsMojo.loadFromFiles(files, new SystemStreamLog(), new BuildMetrics("test"));
+	}
+}
@@ -0,0 +1,179 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.mojo;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openmrs.maven.plugins.distrotools.MetadataConfig;
+import org.openmrs.maven.plugins.distrotools.util.BuildMetrics;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link GenerateMetadataSourcesMojo}
+ */
+public class GenerateMetadataSourcesMojoTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * @see GenerateMetadataSourcesMojo#loadFromFiles(java.util.List, org.apache.maven.plugin.logging.Log, BuildMetrics, String, int)
+	 */
+	@Test
+	public void loadFromFiles_shouldMergeFilesInOrderWhenIgnoringConflicts() throws Exception {
+		List<File> files = createConflictingFiles();
+		MetadataConfig config = GenerateMetadataSourcesMojo.loadFromFiles(files, new SystemStreamLog(), new BuildMetrics("test"), GenerateMetadataSourcesMojo.CONFLICTS_IGNORE, 2);
+
+		Assert.assertThat(config.getReferencesByType("Program").keySet(), contains("HIV", "TB", "MCH"));
+		Assert.assertThat(config.getReferencesByType("Program"), hasEntry("TB", "CCCC"));
+	}
+
+	/**
+	 * @see GenerateMetadataSourcesMojo#addReferencesAndCheck(MetadataConfig, MetadataConfig, java.util.List, java.util.List, java.util.List)
+	 */
+	@Test
+	public void addReferencesAndCheck_shouldDescribeRedefinedKeysAndReusedUuids() throws Exception {
+		List<File> files = createConflictingFiles();
+		MetadataConfig config = new MetadataConfig();
+		List<MetadataConfig> fileConfigs = new ArrayList<MetadataConfig>();
+		List<String> conflicts = new ArrayList<String>();
+
+		for (File file : files) {
+			MetadataConfig fileConfig = GenerateMetadataSourcesMojo.loadFromFiles(Collections.singletonList(file), new SystemStreamLog(), new BuildMetrics("test"), GenerateMetadataSourcesMojo.CONFLICTS_IGNORE, 2);
+			fileConfigs.add(fileConfig);
+			GenerateMetadataSourcesMojo.addReferencesAndCheck(config, fileConfig, files, fileConfigs, conflicts);
+		}
+
+		String path1 = files.get(0).getPath(), path2 = files.get(1).getPath();
+		Assert.assertThat(conflicts, contains(
+				"Program.TB is defined as BBBB in " + path1 + " and as CCCC in " + path2,
+				"UUID AAAA of Program.MCH in " + path2 + " is already used by Program.HIV in " + path1
+		));
+	}
+
+	/**
+	 * @see GenerateMetadataSourcesMojo#loadFromFiles(java.util.List, org.apache.maven.plugin.logging.Log, BuildMetrics, String, int)
+	 */
+	@Test(expected = MojoFailureException.class)
+	public void loadFromFiles_shouldFailOnConflictsInFailMode() throws Exception {
+		GenerateMetadataSourcesMojo.loadFromFiles(createConflictingFiles(), new SystemStreamLog(), new BuildMetrics("test"), GenerateMetadataSourcesMojo.CONFLICTS_FAIL, 2);
+	}
+
+	/**
+	 * @see GenerateMetadataSourcesMojo#loadFromFiles(java.util.List, org.apache.maven.plugin.logging.Log, BuildMetrics, String, int)
+	 */
+	@Test
+	public void loadFromFiles_shouldGiveSameResultWithAnyNumberOfThreads() throws Exception {
+		List<File> files = new ArrayList<File>();
+		for (int f = 0; f < 50; f++) {
+			File file = folder.newFile(f + ".xml");
+			StringBuilder sb = new StringBuilder("<refs type=\"Type" + (f % 3) + "\">");
+			for (int r = 0; r < 20; r++) {
+				// Some keys are repeated in later files
+				sb.append("<ref key=\"KEY_" + ((f * 20 + r) % 700) + "\" uuid=\"" + f + "-" + r + "\" />");
+			}
+			FileUtils.writeStringToFile(file, sb.append("</refs>").toString());
+			files.add(file);
+		}
+
+		MetadataConfig serial = GenerateMetadataSourcesMojo.loadFromFiles(files, new SystemStreamLog(), new BuildMetrics("test"), GenerateMetadataSourcesMojo.CONFLICTS_IGNORE, 1);
+		MetadataConfig parallel = GenerateMetadataSourcesMojo.loadFromFiles(files, new SystemStreamLog(), new BuildMetrics("test"), GenerateMetadataSourcesMojo.CONFLICTS_IGNORE, 8);
+
+		Assert.assertThat(parallel.getConfiguredTypes(), contains(serial.getConfiguredTypes().toArray()));
+		for (String type : serial.getConfiguredTypes()) {
+			Assert.assertThat(parallel.getReferencesByType(type).entrySet(), contains(serial.getReferencesByType(type).entrySet().toArray()));
+		}
+	}
+
+	/**
+	 * @see GenerateMetadataSourcesMojo#generateMetadataSource(MetadataConfig, java.io.File, String, int)
+	 */
+	@Test
+	public void generateMetadataSource_shouldSplitLargeTypesIntoShardInterfaces() throws Exception {
+		File outputDirectory = folder.newFolder("generated");
+		new GenerateMetadataSourcesMojo().generateMetadataSource(createShardedConfig(), outputDirectory, "org.test", 2);
+
+		File packageDirectory = new File(outputDirectory, "org/test");
+		String source = FileUtils.readFileToString(new File(packageDirectory, "Metadata.java"));
+		Assert.assertThat(source, containsString("\tpublic static class Concept implements Metadata_Concept_1, Metadata_Concept_2, Metadata_Concept_3 {\n\t}\n"));
+		Assert.assertThat(source, containsString("\tpublic static class Location {\n\t\tpublic static final String HOME = \"LLLL\";\n\t}\n"));
+		Assert.assertThat(source, not(containsString("CCCC1")));
+
+		String shard1 = FileUtils.readFileToString(new File(packageDirectory, "Metadata_Concept_1.java"));
+		Assert.assertThat(shard1, containsString("package org.test;"));
+		Assert.assertThat(shard1, containsString("public interface Metadata_Concept_1 {\n\t\tpublic static final String C1 = \"CCCC1\";\n\t\tpublic static final String C2 = \"CCCC2\";\n\n}"));
+
+		String shard3 = FileUtils.readFileToString(new File(packageDirectory, "Metadata_Concept_3.java"));
+		Assert.assertThat(shard3, containsString("public interface Metadata_Concept_3 {\n\t\tpublic static final String C5 = \"CCCC5\";\n\n}"));
+
+		Assert.assertThat(new File(packageDirectory, "Metadata_Location_1.java").exists(), is(false));
+	}
+
+	/**
+	 * @see GenerateMetadataSourcesMojo#deleteStaleShards(java.util.Set)
+	 */
+	@Test
+	public void deleteStaleShards_shouldOnlyDeleteShardsPreviouslyGeneratedByThisGoal() throws Exception {
+		File outputDirectory = folder.newFolder("generated");
+		File packageDirectory = new File(outputDirectory, "org/test");
+		GenerateMetadataSourcesMojo mojo = new GenerateMetadataSourcesMojo();
+
+		mojo.generateMetadataSource(createShardedConfig(), outputDirectory, "org.test", 2);
+		Assert.assertThat(new File(packageDirectory, "Metadata_Concept_3.java").exists(), is(true));
+
+		// Written to the same package by something else
+		File other = new File(packageDirectory, "Metadata_Other_1.java");
+		FileUtils.writeStringToFile(other, "package org.test; public interface Metadata_Other_1 {}");
+
+		mojo.generateMetadataSource(createShardedConfig(), outputDirectory, "org.test", 3);
+
+		Assert.assertThat(new File(packageDirectory, "Metadata_Concept_1.java").exists(), is(true));
+		Assert.assertThat(new File(packageDirectory, "Metadata_Concept_2.java").exists(), is(true));
+		Assert.assertThat(new File(packageDirectory, "Metadata_Concept_3.java").exists(), is(false));
+		Assert.assertThat(other.exists(), is(true));
+	}
+
+	private MetadataConfig createShardedConfig() {
+		MetadataConfig config = new MetadataConfig();
+		for (int c = 1; c <= 5; c++) {
+			config.addReference("Concept", "C" + c, "CCCC" + c);
+		}
+		config.addReference("Location", "HOME", "LLLL");
+		return config;
+	}
+
+	private List<File> createConflictingFiles() throws Exception {
+		File file1 = folder.newFile("1.xml");
+		FileUtils.writeStringToFile(file1, "<refs type=\"Program\"><ref key=\"HIV\" uuid=\"AAAA\" /><ref key=\"TB\" uuid=\"BBBB\" /></refs>");
+		File file2 = folder.newFile("2.xml");
+		FileUtils.writeStringToFile(file2, "<refs type=\"Program\"><ref key=\"TB\" uuid=\"CCCC\" /><ref key=\"MCH\" uuid=\"AAAA\" /></refs>");
+
+		List<File> files = new ArrayList<File>();
+		files.add(file1);
+		files.add(file2);
+		return files;
+	}
+}
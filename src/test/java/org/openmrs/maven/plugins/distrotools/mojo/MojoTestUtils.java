@@ -0,0 +1,91 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.mojo;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Utility methods for testing goals
+ */
+public class MojoTestUtils {
+
+	/**
+	 * Sets a parameter field of a goal, as Maven would when configuring it
+	 * @param mojo the goal
+	 * @param name the field name, which may be declared by a superclass
+	 * @param value the value
+	 */
+	public static void setParameter(Object mojo, String name, Object value) throws Exception {
+		for (Class<?> clazz = mojo.getClass(); clazz != null; clazz = clazz.getSuperclass()) {
+			try {
+				Field field = clazz.getDeclaredField(name);
+				field.setAccessible(true);
+				field.set(mojo, value);
+				return;
+			}
+			catch (NoSuchFieldException ex) {
+				// Try the superclass
+			}
+		}
+		throw new NoSuchFieldException(name);
+	}
+
+	/**
+	 * Log which records info, warning and error messages, as well as writing them to the console
+	 */
+	public static class RecordingLog extends SystemStreamLog {
+
+		private final List<String> infos = Collections.synchronizedList(new ArrayList<String>());
+
+		private final List<String> warnings = Collections.synchronizedList(new ArrayList<String>());
+
+		private final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+
+		@Override
+		public void info(CharSequence content) {
+			infos.add(content.toString());
+			super.info(content);
+		}
+
+		@Override
+		public void warn(CharSequence content) {
+			warnings.add(content.toString());
+			super.warn(content);
+		}
+
+		@Override
+		public void error(CharSequence content) {
+			errors.add(content.toString());
+			super.error(content);
+		}
+
+		public List<String> getInfos() {
+			return infos;
+		}
+
+		public List<String> getWarnings() {
+			return warnings;
+		}
+
+		public List<String> getErrors() {
+			return errors;
+		}
+	}
+}
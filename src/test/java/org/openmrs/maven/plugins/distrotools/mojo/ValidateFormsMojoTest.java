@@ -0,0 +1,282 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.mojo;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoFailureException;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openmrs.maven.plugins.distrotools.util.XmlUtils;
+import org.w3c.dom.Document;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.openmrs.maven.plugins.distrotools.mojo.MojoTestUtils.setParameter;
+
+/**
+ * Tests for {@link ValidateFormsMojo}
+ */
+public class ValidateFormsMojoTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File formsDirectory;
+
+	private MojoTestUtils.RecordingLog log;
+
+	private ValidateFormsMojo mojo;
+
+	/**
+	 * Setup each test
+	 */
+	@Before
+	public void setup() throws Exception {
+		formsDirectory = folder.newFolder("forms");
+		log = new MojoTestUtils.RecordingLog();
+
+		mojo = new ValidateFormsMojo();
+		mojo.setLog(log);
+		setParameter(mojo, "formsDirectory", formsDirectory);
+		setParameter(mojo, "formsExtension", "html");
+		setParameter(mojo, "validationThreads", 4);
+		setParameter(mojo, "validationCache", false);
+		setParameter(mojo, "validationCacheFile", new File(folder.getRoot(), "target/validate-forms.cache"));
+	}
+
+	/**
+	 * @see ValidateFormsMojo#validateForms()
+	 */
+	@Test
+	public void validateForms_shouldReportEveryFailureInFileOrderWithOneSummaryException() throws Exception {
+		List<String> invalid = new ArrayList<String>();
+		for (int f = 0; f < 30; f++) {
+			String name = String.format("form%02d.html", f);
+			if (f % 4 == 1) {
+				writeForm(name, "<htmlform><section></htmlform>");
+				invalid.add(name);
+			}
+			else if (f % 7 == 3) {
+				writeForm(name, "<notaform/>");
+				invalid.add(name);
+			}
+			else {
+				writeForm(name, "<htmlform><section>Form " + f + "</section></htmlform>");
+			}
+		}
+
+		try {
+			mojo.validateForms();
+			Assert.fail("Expected validation to fail");
+		}
+		catch (MojoFailureException ex) {
+			Assert.assertThat(ex.getMessage(), is(invalid.size() + " of 30 form files failed validation"));
+		}
+
+		Assert.assertThat(log.getErrors().size(), is(invalid.size()));
+		for (int e = 0; e < invalid.size(); e++) {
+			Assert.assertThat(log.getErrors().get(e), startsWith("Unable to parse " + new File(formsDirectory, invalid.get(e)).getPath()));
+		}
+	}
+
+	/**
+	 * @see ValidateFormsMojo#validateForms()
+	 */
+	@Test
+	public void validateForms_shouldPassIfAllFormsAreValid() throws Exception {
+		writeForm("a.html", "<htmlform><section/></htmlform>");
+		writeForm("sub/b.html", "<htmlform><section/></htmlform>");
+
+		mojo.validateForms();
+
+		Assert.assertThat(log.getErrors(), empty());
+	}
+
+	/**
+	 * @see ValidateFormsMojo#validateForms()
+	 */
+	@Test
+	public void validateForms_shouldFailIfFormReferencesUnknownMetadata() throws Exception {
+		File metadataDirectory = folder.newFolder("metadata");
+		FileUtils.writeStringToFile(new File(metadataDirectory, "concepts.xml"),
+				"<refs type=\"Concept\"><ref key=\"YES\" uuid=\"1065AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA\" /></refs>", "UTF-8");
+		setParameter(mojo, "metadataDirectory", metadataDirectory);
+
+		writeForm("a.html", "<htmlform><obs conceptId=\"1065AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA\"/></htmlform>");
+		writeForm("b.html", "<htmlform>\n<obs conceptId=\"${metadata.concept.YES}\" answerConceptIds=\"1066AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA\"/>\n</htmlform>");
+
+		try {
+			mojo.validateForms();
+			Assert.fail("Expected validation to fail");
+		}
+		catch (MojoFailureException ex) {
+			Assert.assertThat(ex.getMessage(), is("1 of 2 form files failed validation"));
+		}
+
+		Assert.assertThat(log.getErrors().size(), is(1));
+		Assert.assertThat(log.getErrors().get(0), startsWith("1 unknown metadata references in " + new File(formsDirectory, "b.html").getPath() +
+				"\n  Unknown reference 1066AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA in attribute answerConceptIds at line 2,"));
+	}
+
+	/**
+	 * @see ValidateFormsMojo#validateFormFile(java.io.File, javax.xml.parsers.DocumentBuilder, javax.xml.transform.Transformer, org.openmrs.maven.plugins.distrotools.util.FormReader, org.openmrs.maven.plugins.distrotools.FormReferenceChecker, org.openmrs.maven.plugins.distrotools.util.ValidationCache)
+	 */
+	@Test
+	public void validateForms_shouldReplayCachedFailuresUntilFormChanges() throws Exception {
+		File form = writeForm("a.html", "<htmlform><section></htmlform>");
+		writeForm("b.html", "<htmlform/>");
+		String error = validateExpectingFailure(createCachingMojo(null));
+
+		// Nothing is parsed again, but the failure is still reported
+		ValidateFormsMojo next = createCachingMojo(null);
+		Assert.assertThat(validateExpectingFailure(next), is(error));
+		Assert.assertThat(phaseCount(next, "validate"), is(0));
+
+		FileUtils.writeStringToFile(form, "<htmlform><section></section></htmlform>", "UTF-8");
+		next = createCachingMojo(null);
+		next.validateForms();
+		Assert.assertThat(phaseCount(next, "validate"), is(1));
+	}
+
+	/**
+	 * @see ValidateFormsMojo#loadCache(java.util.List)
+	 */
+	@Test
+	public void validateForms_shouldInvalidateCacheIfSnapshotPluginJarChanges() throws Exception {
+		writeForm("a.html", "<htmlform/>");
+		File pluginJar = folder.newFile("plugin.jar");
+		FileUtils.writeStringToFile(pluginJar, "build 1");
+
+		createCachingMojo(pluginJar).validateForms();
+		ValidateFormsMojo next = createCachingMojo(pluginJar);
+		next.validateForms();
+		Assert.assertThat(phaseCount(next, "validate"), is(0));
+
+		FileUtils.writeStringToFile(pluginJar, "build 22");
+		next = createCachingMojo(pluginJar);
+		next.validateForms();
+		Assert.assertThat(phaseCount(next, "validate"), is(1));
+
+		// A snapshot loaded from classes rather than a jar can't be identified, so isn't cached
+		createCachingMojo(folder.getRoot()).validateForms();
+		next = createCachingMojo(folder.getRoot());
+		next.validateForms();
+		Assert.assertThat(phaseCount(next, "validate"), is(1));
+	}
+
+	/**
+	 * @see ValidateFormsMojo#applyMacros(org.w3c.dom.Document, CharSequence, javax.xml.transform.Transformer, java.util.Collection)
+	 */
+	@Test
+	public void applyMacros_shouldRemoveMacrosNodeAndExpandLongestNames() throws Exception {
+		String xml = "<htmlform><macros>\nyes=1065\nyesNo=1065,1066\n</macros>" +
+				"<obs conceptId=\"$yes\" answerConceptIds=\"$yesNo\"/></htmlform>";
+		Document form = XmlUtils.stringToDocument(xml, XmlUtils.getBuilder(ValidateFormsMojo.FORM_SCHEMA));
+
+		String applied = ValidateFormsMojo.applyMacros(form, xml, XmlUtils.getTransformer(), null).toString();
+
+		Assert.assertThat(applied, not(containsString("macros")));
+		Assert.assertThat(applied, containsString("<obs answerConceptIds=\"1065,1066\" conceptId=\"1065\"/>"));
+		Assert.assertThat(XmlUtils.findFirstChild(XmlUtils.findFirstChild(form, "htmlform"), "macros"), nullValue());
+	}
+
+	/**
+	 * @see ValidateFormsMojo#validateForms()
+	 */
+	@Test
+	public void validateForms_shouldOnlyWarnAboutProbablyMisspeltMacros() throws Exception {
+		writeForm("a.html", "<htmlform><macros>yesNo=1065,1066</macros>" +
+				"<obs answerConceptIds=\"$yesno\"/><script>$j(function() { $('#x').toggle($yesNo); });</script></htmlform>");
+
+		mojo.validateForms();
+
+		Assert.assertThat(log.getWarnings(), contains("Undefined macros referenced in " + new File(formsDirectory, "a.html").getPath() + ": $yesno"));
+	}
+
+	/**
+	 * @see ValidateFormsMojo#applyMacros(org.w3c.dom.Document, CharSequence, javax.xml.transform.Transformer, java.util.Collection)
+	 */
+	@Test
+	public void applyMacros_shouldReturnFormWithoutMacrosUnchanged() throws Exception {
+		StringBuilder xml = new StringBuilder("<htmlform>\n  <obs conceptId=\"$yes\"/>\n</htmlform>");
+		Document form = XmlUtils.stringToDocument(xml, XmlUtils.getBuilder(ValidateFormsMojo.FORM_SCHEMA));
+
+		Assert.assertThat(ValidateFormsMojo.applyMacros(form, xml, XmlUtils.getTransformer(), null), sameInstance((CharSequence) xml));
+		Assert.assertThat(xml.toString(), is("<htmlform>\n  <obs conceptId=\"$yes\"/>\n</htmlform>"));
+	}
+
+	/**
+	 * Creates a goal which uses the validation cache
+	 * @param pluginFile the plugin jar of a snapshot plugin version (null for a release version)
+	 */
+	private ValidateFormsMojo createCachingMojo(final File pluginFile) throws Exception {
+		ValidateFormsMojo mojo = new ValidateFormsMojo() {
+			@Override
+			protected File getPluginFile() {
+				return pluginFile;
+			}
+		};
+		mojo.setLog(new MojoTestUtils.RecordingLog());
+		setParameter(mojo, "formsDirectory", formsDirectory);
+		setParameter(mojo, "formsExtension", "html");
+		setParameter(mojo, "validationThreads", 2);
+		setParameter(mojo, "validationCache", true);
+		setParameter(mojo, "validationCacheFile", new File(folder.getRoot(), "target/validate-forms.cache"));
+		setParameter(mojo, "pluginVersion", pluginFile != null ? "1.0-SNAPSHOT" : "1.0");
+		return mojo;
+	}
+
+	/**
+	 * Validates forms, expecting exactly one to fail
+	 * @return the logged error
+	 */
+	private String validateExpectingFailure(ValidateFormsMojo mojo) throws Exception {
+		try {
+			mojo.validateForms();
+			Assert.fail("Expected validation to fail");
+		}
+		catch (MojoFailureException ex) {
+			Assert.assertThat(ex.getMessage(), startsWith("1 of "));
+		}
+		List<String> errors = ((MojoTestUtils.RecordingLog) mojo.getLog()).getErrors();
+		Assert.assertThat(errors.size(), is(1));
+		return errors.get(0);
+	}
+
+	/**
+	 * Gets the number of times a phase was recorded in a goal's metrics
+	 */
+	private int phaseCount(ValidateFormsMojo mojo, String phase) throws Exception {
+		JsonNode phases = new ObjectMapper().readTree(mojo.getMetrics().writeReports(folder.newFolder(), 0)).get("phases");
+		return phases.has(phase) ? phases.get(phase).get("count").getIntValue() : 0;
+	}
+
+	/**
+	 * Writes a form file in the forms directory
+	 */
+	private File writeForm(String path, String content) throws Exception {
+		File file = new File(formsDirectory, path);
+		FileUtils.writeStringToFile(file, content, "UTF-8");
+		return file;
+	}
+}
@@ -0,0 +1,205 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.mojo;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.openmrs.maven.plugins.distrotools.mojo.MojoTestUtils.setParameter;
+
+/**
+ * Tests for {@link WatchMojo}
+ */
+public class WatchMojoTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private WatchMojo mojo;
+
+	private WatchService watcher;
+
+	private File metadataDirectory;
+
+	private File filterFile;
+
+	private MojoTestUtils.RecordingLog log;
+
+	/**
+	 * Setup each test
+	 */
+	@Before
+	public void setup() throws Exception {
+		metadataDirectory = folder.newFolder("metadata");
+		filterFile = new File(folder.getRoot(), "target/metadata.properties");
+
+		log = new MojoTestUtils.RecordingLog();
+		mojo = new WatchMojo();
+		mojo.setLog(log);
+		setParameter(mojo, "formsExtension", "html");
+		setParameter(mojo, "metadataDirectory", metadataDirectory);
+		setParameter(mojo, "outputDirectory", new File(folder.getRoot(), "target/generated-sources"));
+		setParameter(mojo, "outputPackage", "org.test");
+		setParameter(mojo, "metadataFilterFile", filterFile);
+		setParameter(mojo, "constantsFilterFile", new File(folder.getRoot(), "target/constants.properties"));
+		setParameter(mojo, "excludes", new String[] { "**/drafts" });
+		mojo.initialize();
+
+		watcher = FileSystems.getDefault().newWatchService();
+	}
+
+	/**
+	 * Cleanup after each test
+	 */
+	@After
+	public void cleanup() throws Exception {
+		watcher.close();
+	}
+
+	/**
+	 * @see WatchMojo#collectChanges(java.nio.file.WatchService, java.nio.file.WatchKey, java.util.Set)
+	 */
+	@Test
+	public void collectChanges_shouldRegisterNewDirectoriesAndIncludeAllTheirFiles() throws Exception {
+		mojo.registerRecursive(watcher, metadataDirectory.toPath());
+
+		File sub = new File(metadataDirectory, "sub");
+		sub.mkdir();
+		FileUtils.writeStringToFile(new File(sub, "a.xml"), "<refs type=\"Program\" />");
+		FileUtils.writeStringToFile(new File(sub, "README"), "No extension");
+
+		Set<Path> changed = collectAll();
+
+		Assert.assertThat(changed, hasItems(new File(sub, "a.xml").toPath(), new File(sub, "README").toPath()));
+		Assert.assertThat(mojo.getWatchedDirectories(), hasItem(sub.toPath()));
+	}
+
+	/**
+	 * @see WatchMojo#resetKey(java.nio.file.WatchKey)
+	 */
+	@Test
+	public void resetKey_shouldForgetDeletedDirectories() throws Exception {
+		File sub = new File(metadataDirectory, "sub");
+		sub.mkdir();
+		mojo.registerRecursive(watcher, metadataDirectory.toPath());
+		Assert.assertThat(mojo.getWatchedDirectories(), hasItem(sub.toPath()));
+
+		FileUtils.deleteDirectory(sub);
+		Set<Path> changed = collectAll();
+
+		Assert.assertThat(changed, hasItem(sub.toPath()));
+		Assert.assertThat(mojo.getWatchedDirectories(), contains(metadataDirectory.toPath()));
+	}
+
+	/**
+	 * @see WatchMojo#processChanges(java.util.Set, boolean, boolean)
+	 */
+	@Test
+	public void processChanges_shouldOnlyLoadIncludedInputsAndForgetDeletedFiles() throws Exception {
+		File included = new File(metadataDirectory, "programs.xml");
+		FileUtils.writeStringToFile(included, "<refs type=\"Program\"><ref key=\"HIV\" uuid=\"AAAA\" /></refs>");
+		File excluded = new File(metadataDirectory, "drafts/programs.xml");
+		FileUtils.writeStringToFile(excluded, "<refs type=\"Program\"><ref key=\"TB\" uuid=\"BBBB\" /></refs>");
+		File other = new File(metadataDirectory, "programs.txt");
+		FileUtils.writeStringToFile(other, "Not a reference file");
+
+		Set<Path> changed = new TreeSet<Path>();
+		changed.add(included.toPath());
+		changed.add(excluded.toPath());
+		changed.add(other.toPath());
+		mojo.processChanges(changed, false, false);
+
+		Assert.assertThat(FileUtils.readFileToString(filterFile), is("metadata.program.HIV=AAAA\n"));
+
+		included.delete();
+		mojo.processChanges(Collections.singleton(included.toPath()), false, false);
+
+		Assert.assertThat(FileUtils.readFileToString(filterFile), is(""));
+	}
+
+	/**
+	 * @see WatchMojo#processChanges(java.util.Set, boolean, boolean)
+	 */
+	@Test
+	public void processChanges_shouldOnlySummarizeFilesGeneratedByEachPass() throws Exception {
+		File refs = new File(metadataDirectory, "programs.xml");
+		FileUtils.writeStringToFile(refs, "<refs type=\"Program\"><ref key=\"HIV\" uuid=\"AAAA\" /></refs>");
+
+		mojo.processChanges(Collections.singleton(refs.toPath()), false, false);
+		mojo.processChanges(Collections.singleton(refs.toPath()), false, false);
+
+		Assert.assertThat(log.getInfos(), hasItems("Wrote 2 files, skipped 0 unchanged files", "Wrote 0 files, skipped 2 unchanged files"));
+	}
+
+	/**
+	 * @see WatchMojo#processChanges(java.util.Set, boolean, boolean)
+	 */
+	@Test
+	public void processChanges_shouldCheckFormReferencesAndRecheckFormsWhenReferencesChange() throws Exception {
+		File formsDirectory = folder.newFolder("forms");
+		setParameter(mojo, "formsDirectory", formsDirectory);
+		mojo.initialize();
+
+		File form = new File(formsDirectory, "vitals.html");
+		FileUtils.writeStringToFile(form, "<htmlform><obs conceptId=\"1065AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA\" /></htmlform>");
+		File refs = new File(metadataDirectory, "concepts.xml");
+		FileUtils.writeStringToFile(refs, "<refs type=\"Concept\"><ref key=\"NO\" uuid=\"1066AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA\" /></refs>");
+
+		Set<Path> changed = new TreeSet<Path>();
+		changed.add(form.toPath());
+		changed.add(refs.toPath());
+		mojo.processChanges(changed, false, false);
+
+		Assert.assertThat(log.getErrors().size(), is(1));
+		Assert.assertThat(log.getErrors().get(0), containsString("Unknown reference 1065AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA"));
+
+		// Only the reference file changes, but the form is checked again
+		FileUtils.writeStringToFile(refs, "<refs type=\"Concept\"><ref key=\"YES\" uuid=\"1065AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA\" /></refs>");
+		mojo.processChanges(Collections.singleton(refs.toPath()), false, false);
+
+		Assert.assertThat(log.getErrors().size(), is(1));
+		Assert.assertThat(log.getInfos(), hasItem("Validated form file " + form.getPath()));
+	}
+
+	/**
+	 * Collects changes from all signalled keys until there is a pause
+	 */
+	private Set<Path> collectAll() throws Exception {
+		Set<Path> changed = new TreeSet<Path>();
+		WatchKey key = watcher.poll(10, TimeUnit.SECONDS);
+		while (key != null) {
+			mojo.collectChanges(watcher, key, changed);
+			mojo.resetKey(key);
+			key = watcher.poll(1, TimeUnit.SECONDS);
+		}
+		return changed;
+	}
+}
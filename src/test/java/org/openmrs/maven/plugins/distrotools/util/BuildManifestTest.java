@@ -0,0 +1,91 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.util;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link BuildManifest}
+ */
+public class BuildManifestTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * @see BuildManifest#save(java.io.File, String)
+	 * @see BuildManifest#load(java.io.File)
+	 */
+	@Test
+	public void load_shouldReturnSavedDigestAndOutputs() throws Exception {
+		File file = new File(folder.getRoot(), "manifests/test.manifest");
+		new BuildManifest("abc123", Arrays.asList("target/b.properties", "target/a.java")).save(file, "test");
+
+		BuildManifest manifest = BuildManifest.load(file);
+		Assert.assertThat(manifest.getDigest(), is("abc123"));
+		Assert.assertThat(manifest.getOutputs(), contains("target/a.java", "target/b.properties"));
+	}
+
+	/**
+	 * @see BuildManifest#save(java.io.File, String)
+	 * @see BuildManifest#load(java.io.File)
+	 */
+	@Test
+	public void load_shouldReturnPathsWithCharactersWhichNeedEscaping() throws Exception {
+		File file = folder.newFile("test.manifest");
+		String[] paths = { "C:\\build\\Metadata.java", "a=b:c#d!e.java", " leading space.java", "caf\u00e9/\u4e2d\u6587.java" };
+		new BuildManifest("abc123", Arrays.asList(paths)).save(file, "test");
+
+		Assert.assertThat(BuildManifest.load(file).getOutputs(), containsInAnyOrder(paths));
+	}
+
+	/**
+	 * @see BuildManifest#load(java.io.File)
+	 */
+	@Test
+	public void load_shouldReturnNullIfFileDoesNotExist() throws Exception {
+		Assert.assertThat(BuildManifest.load(new File(folder.getRoot(), "missing.manifest")), nullValue());
+	}
+
+	/**
+	 * @see BuildManifest#isUpToDate(String, java.io.File)
+	 */
+	@Test
+	public void isUpToDate_shouldCheckDigestAndThatOutputsExist() throws Exception {
+		folder.newFolder("target");
+		folder.newFile("target/a.java");
+		File outside = File.createTempFile("outside", ".java");
+		try {
+			BuildManifest manifest = new BuildManifest("abc123", Arrays.asList("target/a.java", outside.getAbsolutePath()));
+
+			Assert.assertThat(manifest.isUpToDate("abc123", folder.getRoot()), is(true));
+			Assert.assertThat(manifest.isUpToDate("def456", folder.getRoot()), is(false));
+
+			outside.delete();
+			Assert.assertThat(manifest.isUpToDate("abc123", folder.getRoot()), is(false));
+		}
+		finally {
+			outside.delete();
+		}
+	}
+}
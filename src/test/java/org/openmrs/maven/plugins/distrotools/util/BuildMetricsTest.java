@@ -0,0 +1,132 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.util;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link BuildMetrics}
+ */
+public class BuildMetricsTest {
+
+	private static final long SECOND = 1000000000L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * @see BuildMetrics#percentile(java.util.List, int)
+	 */
+	@Test
+	public void percentile_shouldUseNearestRank() {
+		List<BuildMetrics.FileMetric> sorted = new ArrayList<BuildMetrics.FileMetric>();
+		for (int f = 1; f <= 10; f++) {
+			sorted.add(new BuildMetrics.FileMetric("file" + f, 100, f * 10));
+		}
+
+		Assert.assertThat(BuildMetrics.percentile(sorted, 50), is(50L));
+		Assert.assertThat(BuildMetrics.percentile(sorted, 90), is(90L));
+		Assert.assertThat(BuildMetrics.percentile(sorted, 99), is(100L));
+		Assert.assertThat(BuildMetrics.percentile(sorted, 0), is(10L));
+		Assert.assertThat(BuildMetrics.percentile(sorted.subList(0, 1), 50), is(10L));
+	}
+
+	/**
+	 * @see BuildMetrics#writeReports(java.io.File, int)
+	 */
+	@Test
+	public void writeReports_shouldWriteFileStatisticsAndSlowestFiles() throws Exception {
+		BuildMetrics metrics = createMetrics();
+
+		File report = metrics.writeReports(new File(folder.getRoot(), "reports"), 2);
+		Assert.assertThat(report.getName(), is("test-metrics.json"));
+
+		JsonNode json = new ObjectMapper().readTree(report);
+		Assert.assertThat(json.get("goal").getTextValue(), is("test"));
+		Assert.assertThat(json.get("phases").get("parse").get("count").getLongValue(), is(2L));
+		Assert.assertThat(json.get("phases").get("write").get("count").getLongValue(), is(1L));
+
+		JsonNode files = json.get("files");
+		Assert.assertThat(files.get("count").getIntValue(), is(3));
+		Assert.assertThat(files.get("bytes").getLongValue(), is(600L));
+		Assert.assertThat(files.get("bytesWritten").getLongValue(), is(1234L));
+		Assert.assertThat(files.get("minMs").getDoubleValue(), greaterThanOrEqualTo(1000.0));
+		Assert.assertThat(files.get("p50Ms").getDoubleValue(), greaterThanOrEqualTo(2000.0));
+		Assert.assertThat(files.get("p50Ms").getDoubleValue(), lessThan(3000.0));
+		Assert.assertThat(files.get("maxMs").getDoubleValue(), greaterThanOrEqualTo(3000.0));
+
+		JsonNode slowest = json.get("slowest");
+		Assert.assertThat(slowest.size(), is(2));
+		Assert.assertThat(slowest.get(0).get("path").getTextValue(), is("slow.xml"));
+		Assert.assertThat(slowest.get(0).get("bytes").getLongValue(), is(300L));
+		Assert.assertThat(slowest.get(1).get("path").getTextValue(), is("medium, quoted \"file\".xml"));
+	}
+
+	/**
+	 * @see BuildMetrics#writeReports(java.io.File, int)
+	 */
+	@Test
+	public void writeReports_shouldWriteOneCsvRowPerFile() throws Exception {
+		File directory = new File(folder.getRoot(), "reports");
+		createMetrics().writeReports(directory, 10);
+
+		List<String> lines = org.apache.commons.io.FileUtils.readLines(new File(directory, "test-metrics.csv"), "UTF-8");
+		Assert.assertThat(lines.size(), is(4));
+		Assert.assertThat(lines.get(0), is("path,bytes,ms"));
+		Assert.assertThat(lines.get(1), startsWith("fast.xml,100,"));
+		Assert.assertThat(lines.get(2), startsWith("\"medium, quoted \"\"file\"\".xml\",200,"));
+		Assert.assertThat(lines.get(3), startsWith("slow.xml,300,"));
+	}
+
+	/**
+	 * @see BuildMetrics#writeReports(java.io.File, int)
+	 */
+	@Test
+	public void writeReports_shouldOmitFileStatisticsIfNoFiles() throws Exception {
+		File report = new BuildMetrics("empty").writeReports(folder.getRoot(), 10);
+
+		JsonNode json = new ObjectMapper().readTree(report);
+		Assert.assertThat(json.get("files").get("count").getIntValue(), is(0));
+		Assert.assertThat(json.get("files").has("p50Ms"), is(false));
+		Assert.assertThat(json.get("slowest").size(), is(0));
+	}
+
+	/**
+	 * Creates metrics for files which took at least 1, 2 and 3 seconds, by backdating their start times
+	 */
+	private BuildMetrics createMetrics() {
+		BuildMetrics metrics = new BuildMetrics("test");
+		long now = System.nanoTime();
+		metrics.addFile("fast.xml", 100, now - SECOND);
+		metrics.addFile("medium, quoted \"file\".xml", 200, now - 2 * SECOND);
+		metrics.addFile("slow.xml", 300, now - 3 * SECOND);
+		metrics.addPhaseTime("parse", now);
+		metrics.addPhaseTime("parse", now);
+		metrics.addPhaseTime("write", now);
+		metrics.addBytesWritten(1234);
+		return metrics;
+	}
+}
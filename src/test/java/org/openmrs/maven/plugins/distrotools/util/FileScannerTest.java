@@ -0,0 +1,162 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.util;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link FileScanner}
+ */
+public class FileScannerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Setup each test
+	 */
+	@Before
+	public void setup() throws Exception {
+		folder.newFolder("b", "drafts");
+		folder.newFolder("a.xml");
+		folder.newFile("z.xml");
+		folder.newFile("b/y.xml");
+		folder.newFile("b/x.json");
+		folder.newFile("b/drafts/w.xml");
+		folder.newFile("a.xml/v.xml");
+		folder.newFile("notxml");
+	}
+
+	/**
+	 * @see FileScanner#scan(java.io.File)
+	 */
+	@Test
+	public void scan_shouldFindMatchingFilesSortedByRelativePath() throws Exception {
+		List<File> files = new FileScanner(new String[] { "**/*.xml" }, null, false).scan(folder.getRoot());
+		Assert.assertThat(relativePaths(files), contains("a.xml/v.xml", "b/drafts/w.xml", "b/y.xml", "z.xml"));
+	}
+
+	/**
+	 * @see FileScanner#scan(java.io.File)
+	 */
+	@Test
+	public void scan_shouldNotDescendIntoExcludedDirectories() throws Exception {
+		List<File> files = new FileScanner(new String[] { "**/*.xml" }, new String[] { "**/drafts" }, false).scan(folder.getRoot());
+		Assert.assertThat(relativePaths(files), contains("a.xml/v.xml", "b/y.xml", "z.xml"));
+	}
+
+	/**
+	 * @see FileScanner#scan(java.io.File)
+	 */
+	@Test
+	public void scan_shouldFindSameFilesInParallel() throws Exception {
+		String[] includes = { "**/*.xml", "**/*.json" };
+		String[] excludes = { "z.xml" };
+		List<File> serial = new FileScanner(includes, excludes, false).scan(folder.getRoot());
+		List<File> parallel = new FileScanner(includes, excludes, true).scan(folder.getRoot());
+		Assert.assertThat(parallel, is(serial));
+		Assert.assertThat(relativePaths(parallel), contains("a.xml/v.xml", "b/drafts/w.xml", "b/x.json", "b/y.xml"));
+	}
+
+	/**
+	 * @see FileScanner#scan(java.io.File)
+	 */
+	@Test
+	public void scan_shouldFollowLinksWithoutLooping() throws Exception {
+		File outside = folder.newFolder("outside");
+		folder.newFile("outside/u.xml");
+		File scanned = new File(folder.getRoot(), "b");
+
+		Path root = folder.getRoot().toPath();
+		Assume.assumeTrue(createLink(root.resolve("b/linked"), outside.toPath()));
+		createLink(root.resolve("b/t.xml"), root.resolve("z.xml"));
+		createLink(root.resolve("b/drafts/loop"), root.resolve("b"));
+		createLink(root.resolve("b/broken.xml"), root.resolve("missing.xml"));
+		createLink(root.resolve("b/self.xml"), root.resolve("b/self.xml"));
+
+		String[] includes = { "**/*.xml" };
+		List<File> serial = new FileScanner(includes, null, false).scan(scanned);
+		List<File> parallel = new FileScanner(includes, null, true).scan(scanned);
+
+		Assert.assertThat(relativePaths(serial), contains("b/drafts/w.xml", "b/linked/u.xml", "b/t.xml", "b/y.xml"));
+		Assert.assertThat(parallel, is(serial));
+	}
+
+	/**
+	 * @see FileScanner#scan(java.io.File)
+	 */
+	@Test
+	public void scan_shouldThrowIOExceptionIfSubDirectoryIsUnreadableInParallel() throws Exception {
+		File locked = folder.newFolder("b", "drafts", "locked");
+		Assume.assumeTrue(locked.setReadable(false, false));
+		try {
+			// Permissions don't apply to some users, e.g. root
+			Assume.assumeFalse(Files.isReadable(locked.toPath()));
+			assertScanFails(true);
+			assertScanFails(false);
+		}
+		finally {
+			locked.setReadable(true, false);
+		}
+	}
+
+	/**
+	 * Asserts that scanning the test directory fails with an IOException
+	 */
+	private void assertScanFails(boolean parallel) throws Exception {
+		try {
+			new FileScanner(new String[] { "**/*.xml" }, null, parallel).scan(folder.getRoot());
+			Assert.fail("Expected the scan to fail");
+		}
+		catch (IOException ex) {
+			// Expected
+		}
+	}
+
+	private static boolean createLink(Path link, Path target) {
+		try {
+			Files.createSymbolicLink(link, target);
+			return true;
+		}
+		catch (IOException ex) {
+			return false;
+		}
+		catch (UnsupportedOperationException ex) {
+			return false;
+		}
+	}
+
+	private List<String> relativePaths(List<File> files) {
+		List<String> paths = new ArrayList<String>();
+		for (File file : files) {
+			paths.add(folder.getRoot().toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/'));
+		}
+		return paths;
+	}
+}
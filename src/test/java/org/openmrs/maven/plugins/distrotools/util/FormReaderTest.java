@@ -0,0 +1,77 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.util;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link FormReader}
+ */
+public class FormReaderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * @see FormReader#read(java.io.File)
+	 */
+	@Test
+	public void read_shouldDecodeUtf8AndSkipByteOrderMark() throws Exception {
+		File file = folder.newFile("form.html");
+		FileUtils.writeStringToFile(file, "\uFEFF<htmlform>T\u0161uana \u00E9</htmlform>", "UTF-8");
+
+		Assert.assertThat(new FormReader().read(file).toString(), is("<htmlform>T\u0161uana \u00E9</htmlform>"));
+	}
+
+	/**
+	 * @see FormReader#read(java.io.File)
+	 */
+	@Test
+	public void read_shouldReuseBuffersAndGrowForLargeFiles() throws Exception {
+		StringBuilder large = new StringBuilder();
+		while (large.length() < 100000) {
+			large.append("<obs conceptId=\"1065\"/>\u00E9\n");
+		}
+		File largeFile = folder.newFile("large.html");
+		FileUtils.writeStringToFile(largeFile, large.toString(), "UTF-8");
+		File smallFile = folder.newFile("small.html");
+		FileUtils.writeStringToFile(smallFile, "<htmlform/>", "UTF-8");
+
+		FormReader reader = new FormReader();
+		Assert.assertThat(reader.read(largeFile).toString(), is(large.toString()));
+		Assert.assertThat(reader.read(smallFile).toString(), is("<htmlform/>"));
+		Assert.assertThat(reader.readWithoutComments(smallFile).toString(), is("<htmlform/>"));
+	}
+
+	/**
+	 * @see FormReader#read(java.io.File)
+	 */
+	@Test(expected = IOException.class)
+	public void read_shouldFailForInvalidUtf8() throws Exception {
+		File file = folder.newFile("latin1.html");
+		FileUtils.writeByteArrayToFile(file, new byte[] { '<', 'a', '>', (byte) 0xE9, '<', '/', 'a', '>' });
+
+		new FormReader().read(file);
+	}
+}
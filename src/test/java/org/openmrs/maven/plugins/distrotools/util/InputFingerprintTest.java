@@ -0,0 +1,70 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.util;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link InputFingerprint}
+ */
+public class InputFingerprintTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * @see InputFingerprint#addFiles(java.io.File, java.util.List, FileHashIndex)
+	 */
+	@Test
+	public void addFiles_shouldOnlyDependOnRelativePathsAndContent() throws Exception {
+		String digest1 = digest(createInputs("project1", "content"));
+		String digest2 = digest(createInputs("project2", "content"));
+		String digest3 = digest(createInputs("project3", "changed"));
+
+		Assert.assertThat(digest1, is(digest2));
+		Assert.assertThat(digest1, not(digest3));
+	}
+
+	/**
+	 * @see InputFingerprint#add(String, Object)
+	 */
+	@Test
+	public void add_shouldNotLetValuesRunTogether() {
+		String digest1 = new InputFingerprint().add("a", "bc").add("d", "e").getDigest();
+		String digest2 = new InputFingerprint().add("a", "b").add("cd", "e").getDigest();
+		Assert.assertThat(digest1, not(digest2));
+	}
+
+	private File createInputs(String project, String content) throws Exception {
+		File directory = folder.newFolder(project, "metadata");
+		org.apache.commons.io.FileUtils.writeStringToFile(new File(directory, "a.xml"), content);
+		org.apache.commons.io.FileUtils.writeStringToFile(new File(directory, "b.xml"), "other");
+		return directory;
+	}
+
+	private String digest(File directory) throws Exception {
+		List<File> files = Arrays.asList(new File(directory, "a.xml"), new File(directory, "b.xml"));
+		return new InputFingerprint().add("outputPackage", "org.test").addFiles(directory, files, new FileHashIndex()).getDigest();
+	}
+}
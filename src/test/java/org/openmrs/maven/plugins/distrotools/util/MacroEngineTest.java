@@ -0,0 +1,88 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link MacroEngine}
+ */
+public class MacroEngineTest {
+
+	/**
+	 * @see MacroEngine#expand(String, java.util.Collection)
+	 */
+	@Test
+	public void expand_shouldAlwaysMatchLongestName() {
+		Map<String, String> macros = new LinkedHashMap<String, String>();
+		macros.put("yes", "1065");
+		macros.put("yesNo", "1065,1066");
+		macros.put("y", "Y");
+
+		MacroEngine engine = new MacroEngine(macros);
+		Assert.assertThat(engine.expand("<obs conceptId=\"$yes\" answerConceptIds=\"$yesNo\" label=\"$y$yesX\"/>", null),
+				is("<obs conceptId=\"1065\" answerConceptIds=\"1065,1066\" label=\"Y1065X\"/>"));
+	}
+
+	/**
+	 * @see MacroEngine#expand(String, java.util.Collection)
+	 */
+	@Test
+	public void expand_shouldReportUndefinedReferences() {
+		Map<String, String> macros = new LinkedHashMap<String, String>();
+		macros.put("yes", "1065");
+		macros.put("maybe", "1067");
+
+		Set<String> undefined = new TreeSet<String>();
+		String expanded = new MacroEngine(macros).expand("$ye $yeah $yes ${metadata.concept.YES} $ $5 $mabye.x $m $", undefined);
+		Assert.assertThat(expanded, is("$ye $yeah 1065 ${metadata.concept.YES} $ $5 $mabye.x $m $"));
+		Assert.assertThat(undefined, contains("mabye.x", "ye", "yeah"));
+	}
+
+	/**
+	 * @see MacroEngine#expand(String, java.util.Collection)
+	 */
+	@Test
+	public void expand_shouldNotReportTokensWhichAreNotLikeMacroNames() {
+		Map<String, String> macros = new LinkedHashMap<String, String>();
+		macros.put("yes", "1065");
+		macros.put("jsConcept", "5089");
+
+		Set<String> undefined = new TreeSet<String>();
+		String script = "$j(document).ready(function() { $('#no').hide(); $jq.each($no, $y); });";
+		Assert.assertThat(new MacroEngine(macros).expand(script, undefined), is(script));
+		Assert.assertThat(undefined, empty());
+	}
+
+	/**
+	 * @see MacroEngine#expand(String, java.util.Collection)
+	 */
+	@Test
+	public void expand_shouldNotRescanSubstitutedValues() {
+		Map<String, String> macros = new LinkedHashMap<String, String>();
+		macros.put("a", "$b");
+		macros.put("b", "B");
+
+		Assert.assertThat(new MacroEngine(macros).expand("$a$b", null), is("$bB"));
+	}
+}
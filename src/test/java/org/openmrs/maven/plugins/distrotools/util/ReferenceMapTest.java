@@ -0,0 +1,117 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link ReferenceMap}
+ */
+public class ReferenceMapTest {
+
+	/**
+	 * @see ReferenceMap#put(String, String)
+	 */
+	@Test
+	public void put_shouldPreserveUuidsExactly() {
+		ReferenceMap map = new ReferenceMap();
+		map.put("LOWER", "0a1b2c3d-4e5f-6789-abcd-ef0123456789");
+		map.put("UPPER", "0A1B2C3D-4E5F-6789-ABCD-EF0123456789");
+		map.put("DIGITS", "00000000-0000-0000-0000-000000000000");
+		map.put("MIXED", "0a1B2c3d-4e5f-6789-abcd-ef0123456789");
+		map.put("CIEL", "1065AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA");
+		map.put("SHORT", "AAAA");
+
+		Assert.assertThat(map.get("LOWER"), is("0a1b2c3d-4e5f-6789-abcd-ef0123456789"));
+		Assert.assertThat(map.get("UPPER"), is("0A1B2C3D-4E5F-6789-ABCD-EF0123456789"));
+		Assert.assertThat(map.get("DIGITS"), is("00000000-0000-0000-0000-000000000000"));
+		Assert.assertThat(map.get("MIXED"), is("0a1B2c3d-4e5f-6789-abcd-ef0123456789"));
+		Assert.assertThat(map.get("CIEL"), is("1065AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA"));
+		Assert.assertThat(map.get("SHORT"), is("AAAA"));
+		Assert.assertThat(map.get("MISSING"), nullValue());
+	}
+
+	/**
+	 * @see ReferenceMap#put(String, String)
+	 */
+	@Test
+	public void put_shouldBehaveLikeLinkedHashMap() {
+		ReferenceMap map = new ReferenceMap();
+		Map<String, String> expected = new LinkedHashMap<String, String>();
+
+		for (int r = 0; r < 1000; r++) {
+			String key = "KEY_" + (r * 7 % 600);
+			String uuid = r % 3 == 0 ? "REF" + r : java.util.UUID.randomUUID().toString();
+			Assert.assertThat(map.put(key, uuid), is(expected.put(key, uuid)));
+		}
+
+		Assert.assertThat(map.size(), is(expected.size()));
+		Assert.assertThat(map, is(expected));
+		Assert.assertThat(map.keySet(), contains(expected.keySet().toArray()));
+		Assert.assertThat(map.values(), contains(expected.values().toArray()));
+	}
+
+	/**
+	 * @see ReferenceMap#findKey(String)
+	 */
+	@Test
+	public void findKey_shouldFindFirstKeyWithExactUuid() {
+		ReferenceMap map = new ReferenceMap();
+		for (int r = 0; r < 100; r++) {
+			map.put("KEY_" + r, String.format("%08x-0000-0000-0000-000000000000", r));
+		}
+		map.put("UPPER", "0000000A-0000-0000-0000-000000000000");
+		map.put("CIEL", "1065AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA");
+		map.put("AGAIN", "1065AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA");
+
+		Assert.assertThat(map.findKey("0000000a-0000-0000-0000-000000000000"), is("KEY_10"));
+		Assert.assertThat(map.findKey("0000000A-0000-0000-0000-000000000000"), is("UPPER"));
+		Assert.assertThat(map.findKey("1065AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA"), is("CIEL"));
+		Assert.assertThat(map.findKey("1066AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA"), nullValue());
+
+		// Index is maintained after it's built
+		for (int r = 100; r < 1000; r++) {
+			map.put("KEY_" + r, String.format("%08x-0000-0000-0000-000000000000", r));
+		}
+		map.put("CIEL", "1066AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA");
+		Assert.assertThat(map.findKey("000003e7-0000-0000-0000-000000000000"), is("KEY_999"));
+		Assert.assertThat(map.findKey("1065AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA"), is("AGAIN"));
+		Assert.assertThat(map.findKey("1066AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA"), is("CIEL"));
+	}
+
+	/**
+	 * @see ReferenceMap#ReferenceMap(StringTable)
+	 */
+	@Test
+	public void ReferenceMap_shouldShareKeyTable() {
+		StringTable keys = new StringTable();
+		ReferenceMap map1 = new ReferenceMap(keys);
+		ReferenceMap map2 = new ReferenceMap(keys);
+		map1.put("YES", "AAAA");
+		map2.put("YES", "BBBB");
+		map2.put("NO", "CCCC");
+
+		Assert.assertThat(keys.size(), is(2));
+		Assert.assertThat(map1, hasEntry("YES", "AAAA"));
+		Assert.assertThat(map1.containsKey("NO"), is(false));
+		Assert.assertThat(map2.keySet(), contains("YES", "NO"));
+	}
+}
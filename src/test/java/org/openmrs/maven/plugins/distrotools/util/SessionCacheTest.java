@@ -0,0 +1,102 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link SessionCache}
+ */
+public class SessionCacheTest {
+
+	/**
+	 * @see SessionCache#forBuild(Object)
+	 */
+	@Test
+	public void forBuild_shouldOnlyShareCachesOfSameBuild() {
+		Object build = new Object();
+		Assert.assertThat(SessionCache.forBuild(build), sameInstance(SessionCache.forBuild(build)));
+		Assert.assertThat(SessionCache.forBuild(build), not(sameInstance(SessionCache.forBuild(new Object()))));
+		Assert.assertThat(SessionCache.forBuild(null), not(sameInstance(SessionCache.forBuild(null))));
+	}
+
+	/**
+	 * @see SessionCache#get(String, java.util.concurrent.Callable)
+	 */
+	@Test
+	public void get_shouldLoadValueOnceForConcurrentCallers() throws Exception {
+		final SessionCache cache = new SessionCache();
+		final AtomicInteger loads = new AtomicInteger();
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int t = 0; t < 8; t++) {
+				results.add(executor.submit(new Callable<String>() {
+					public String call() throws Exception {
+						return cache.get("key", new Callable<String>() {
+							public String call() throws Exception {
+								loads.incrementAndGet();
+								Thread.sleep(50);
+								return "value";
+							}
+						});
+					}
+				}));
+			}
+			for (Future<String> result : results) {
+				Assert.assertThat(result.get(), is("value"));
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		Assert.assertThat(loads.get(), is(1));
+	}
+
+	/**
+	 * @see SessionCache#get(String, java.util.concurrent.Callable)
+	 */
+	@Test
+	public void get_shouldNotCacheFailedLoads() throws Exception {
+		SessionCache cache = new SessionCache();
+		try {
+			cache.get("key", new Callable<String>() {
+				public String call() throws Exception {
+					throw new IOException("Failed");
+				}
+			});
+			Assert.fail();
+		}
+		catch (IOException ex) {
+			Assert.assertThat(ex.getMessage(), is("Failed"));
+		}
+
+		Assert.assertThat(cache.contains("key"), is(false));
+	}
+}
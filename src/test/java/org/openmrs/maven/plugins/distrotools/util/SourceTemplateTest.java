@@ -0,0 +1,57 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link SourceTemplate}
+ */
+public class SourceTemplateTest {
+
+	/**
+	 * @see SourceTemplate#compile(String)
+	 */
+	@Test
+	public void compile_shouldOnlyTreatUpperCaseNamesInBracesAsPlaceholders() {
+		SourceTemplate template = SourceTemplate.compile("package {PACKAGE};\nclass {CLASS_1} { int[] a = {1}; {} {lower} {A B} {PACKAGE}");
+		Assert.assertThat(template.getPlaceholders(), contains("PACKAGE", "CLASS_1"));
+	}
+
+	/**
+	 * @see SourceTemplate#render(Appendable, java.util.Map)
+	 */
+	@Test
+	public void render_shouldSubstituteValuesAndSections() throws Exception {
+		SourceTemplate template = SourceTemplate.compile("{HEAD}package {PACKAGE};\n{BODY}\n{MISSING}{PACKAGE}");
+		Map<String, Object> values = new HashMap<String, Object>();
+		values.put("HEAD", "");
+		values.put("PACKAGE", "org.test");
+		values.put("BODY", new SourceTemplate.Section() {
+			public void render(Appendable out) throws IOException {
+				out.append("class Test {}");
+			}
+		});
+
+		Assert.assertThat(template.render(values), is("package org.test;\nclass Test {}\n{MISSING}org.test"));
+	}
+}
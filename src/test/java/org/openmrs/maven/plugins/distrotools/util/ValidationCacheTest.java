@@ -0,0 +1,123 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.maven.plugins.distrotools.util;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link ValidationCache}
+ */
+public class ValidationCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * @see ValidationCache#save(java.io.File)
+	 * @see ValidationCache#load(java.io.File, String)
+	 */
+	@Test
+	public void load_shouldReturnResultsSavedWithTheSameVersion() throws Exception {
+		File file = new File(folder.getRoot(), "cache/validation.properties");
+
+		ValidationCache cache = new ValidationCache("v1");
+		cache.put("forms/a.xml", "hash-a", null);
+		cache.put("forms/b.xml", "hash-b", "Line 3: invalid content");
+		cache.save(file);
+
+		ValidationCache loaded = ValidationCache.load(file, "v1");
+
+		ValidationCache.Entry a = loaded.lookup("forms/a.xml", "hash-a");
+		Assert.assertThat(a, notNullValue());
+		Assert.assertThat(a.isValid(), is(true));
+		Assert.assertThat(a.getError(), nullValue());
+
+		ValidationCache.Entry b = loaded.lookup("forms/b.xml", "hash-b");
+		Assert.assertThat(b, notNullValue());
+		Assert.assertThat(b.isValid(), is(false));
+		Assert.assertThat(b.getError(), is("Line 3: invalid content"));
+	}
+
+	/**
+	 * @see ValidationCache#load(java.io.File, String)
+	 */
+	@Test
+	public void load_shouldDiscardResultsSavedWithADifferentVersion() throws Exception {
+		File file = folder.newFile("validation.properties");
+
+		ValidationCache cache = new ValidationCache("v1");
+		cache.put("forms/a.xml", "hash-a", null);
+		cache.save(file);
+
+		Assert.assertThat(ValidationCache.load(file, "v2").lookup("forms/a.xml", "hash-a"), nullValue());
+	}
+
+	/**
+	 * @see ValidationCache#load(java.io.File, String)
+	 */
+	@Test
+	public void load_shouldReturnEmptyCacheIfFileDoesNotExist() throws Exception {
+		ValidationCache cache = ValidationCache.load(new File(folder.getRoot(), "missing.properties"), "v1");
+
+		Assert.assertThat(cache.lookup("forms/a.xml", "hash-a"), nullValue());
+	}
+
+	/**
+	 * @see ValidationCache#lookup(String, String)
+	 */
+	@Test
+	public void lookup_shouldMissIfHashHasChanged() throws Exception {
+		File file = folder.newFile("validation.properties");
+
+		ValidationCache cache = new ValidationCache("v1");
+		cache.put("forms/a.xml", "hash-a", null);
+		cache.save(file);
+
+		ValidationCache loaded = ValidationCache.load(file, "v1");
+
+		Assert.assertThat(loaded.lookup("forms/a.xml", "changed"), nullValue());
+		Assert.assertThat(loaded.lookup("forms/other.xml", "hash-a"), nullValue());
+	}
+
+	/**
+	 * @see ValidationCache#save(java.io.File)
+	 */
+	@Test
+	public void save_shouldOnlyKeepEntriesLookedUpOrRecorded() throws Exception {
+		File file = folder.newFile("validation.properties");
+
+		ValidationCache cache = new ValidationCache("v1");
+		cache.put("forms/a.xml", "hash-a", null);
+		cache.put("forms/b.xml", "hash-b", null);
+		cache.save(file);
+
+		ValidationCache second = ValidationCache.load(file, "v1");
+		second.lookup("forms/a.xml", "hash-a");
+		second.put("forms/c.xml", "hash-c", "error");
+		second.save(file);
+
+		ValidationCache third = ValidationCache.load(file, "v1");
+		Assert.assertThat(third.lookup("forms/a.xml", "hash-a"), notNullValue());
+		Assert.assertThat(third.lookup("forms/b.xml", "hash-b"), nullValue());
+		Assert.assertThat(third.lookup("forms/c.xml", "hash-c").getError(), is("error"));
+	}
+}
@@ -19,6 +19,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -73,4 +75,101 @@ public class XmlUtilsTest {
 		Assert.assertThat(XmlUtils.findAllChildren(itemsNode, "ref").size(), is(2));
 		Assert.assertThat(XmlUtils.findAllChildren(itemsNode, "xxx").size(), is(0));
 	}
-}
\ No newline at end of file
+
+	/**
+	 * @see XmlUtils#getSchema(String)
+	 */
+	@Test
+	public void getSchema_shouldCompileSchemaOnce() throws Exception {
+		Assert.assertThat(XmlUtils.getSchema("metadata-refs.xsd"), sameInstance(XmlUtils.getSchema("metadata-refs.xsd")));
+	}
+
+	/**
+	 * @see XmlUtils#createBuilder(String)
+	 */
+	@Test(expected = SAXException.class)
+	public void createBuilder_shouldCreateValidatingBuilder() throws Exception {
+		XmlUtils.stringToDocument("<refs><ref key=\"YES\" /></refs>", XmlUtils.createBuilder("metadata-refs.xsd"));
+	}
+
+	/**
+	 * @see XmlUtils#getBuilder(String)
+	 */
+	@Test
+	public void getBuilder_shouldReuseBuilderOnlyWithinThread() throws Exception {
+		final DocumentBuilder builder = XmlUtils.getBuilder("metadata-refs.xsd");
+		Assert.assertThat(XmlUtils.getBuilder("metadata-refs.xsd"), sameInstance(builder));
+		Assert.assertThat(XmlUtils.getBuilder(null), not(sameInstance(builder)));
+
+		final DocumentBuilder[] otherThreadBuilder = new DocumentBuilder[1];
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					otherThreadBuilder[0] = XmlUtils.getBuilder("metadata-refs.xsd");
+				}
+				catch (Exception ex) {
+					throw new RuntimeException(ex);
+				}
+			}
+		};
+		thread.start();
+		thread.join();
+
+		Assert.assertThat(otherThreadBuilder[0], notNullValue());
+		Assert.assertThat(otherThreadBuilder[0], not(sameInstance(builder)));
+	}
+
+	/**
+	 * @see XmlUtils#getTransformer()
+	 */
+	@Test
+	public void getTransformer_shouldReuseTransformerWithinThread() throws Exception {
+		Assert.assertThat(XmlUtils.getTransformer(), sameInstance(XmlUtils.getTransformer()));
+	}
+
+	/**
+	 * @see XmlUtils#stripComments(CharSequence)
+	 */
+	@Test
+	public void stripComments_shouldStripSingleAndMultiLineComments() throws Exception {
+		Assert.assertThat(XmlUtils.stripComments("<a><!-- one --><b/><!--\ntwo\n-- >\n<c/><! -- three-- --></a>"), is("<a><b/>\n\n\n<c/></a>"));
+		Assert.assertThat(XmlUtils.stripComments("<!----><a/><!-- -- - -->"), is("<a/>"));
+	}
+
+	/**
+	 * @see XmlUtils#stripComments(CharSequence)
+	 */
+	@Test
+	public void stripComments_shouldNotStripInsideCdata() throws Exception {
+		String xml = "<a><![CDATA[ <!-- kept --> ]]><!-- stripped --><![CDATA[<!--]]></a>";
+		Assert.assertThat(XmlUtils.stripComments(xml), is("<a><![CDATA[ <!-- kept --> ]]><![CDATA[<!--]]></a>"));
+	}
+
+	/**
+	 * @see XmlUtils#stripComments(CharSequence)
+	 */
+	@Test
+	public void stripComments_shouldLeaveUnterminatedCommentsAndOtherMarkup() throws Exception {
+		Assert.assertThat(XmlUtils.stripComments("<!DOCTYPE a><a><!- x -><!-- x </a>"), is("<!DOCTYPE a><a><!- x -><!-- x </a>"));
+		Assert.assertThat(XmlUtils.stripComments("<a><!-- x --></a><!"), is("<a></a><!"));
+	}
+
+	/**
+	 * @see XmlUtils#stripComments(CharSequence)
+	 */
+	@Test
+	public void stripComments_shouldPreserveLineNumbers() throws Exception {
+		String xml = "<a>\r\n<!-- one\r\ntwo\r\n -->\r\n<!--\nthree\n--><b/>\n<c>\n</a>";
+		String stripped = XmlUtils.stripComments(xml);
+		Assert.assertThat(stripped, is("<a>\r\n\r\n\r\n\r\n\n\n<b/>\n<c>\n</a>"));
+
+		try {
+			XmlUtils.stringToDocument(stripped, documentBuilder);
+			Assert.fail("Expected the mismatched tag to be reported");
+		}
+		catch (SAXParseException ex) {
+			Assert.assertThat(ex.getLineNumber(), is(9));
+		}
+	}
+}